@@ -0,0 +1,422 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Micro and end-to-end benchmarks of the weather engine's hot paths:
+ * parsing recorded Open-Meteo responses, locating the current hour, decoding weather codes
+ * and fetching weather through DataManagement from a local stub of the Open-Meteo APIs.
+ * Every benchmark is warmed up, then measured over several fixed-time iterations, reporting
+ * throughput and the bytes allocated per operation on the benchmark thread.
+ * Results can be written as JSON lines and compared against a previous run to catch regressions.
+ */
+public class Benchmarks {
+
+    /**
+     * A benchmarked operation.
+     */
+    private interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @param i Number of the invocation, e.g. to vary the input.
+         * @return A result of the operation, consumed so the JIT cannot remove the work.
+         * @throws Exception If the operation fails, which aborts the run.
+         */
+        Object run(int i) throws Exception;
+    }
+
+    /**
+     * Measurements of one benchmark.
+     */
+    private static class Result {
+        final String name;
+        final double opsPerSecond;
+        final double opsPerSecondError;
+        final double bytesPerOp;
+
+        Result(String name, double opsPerSecond, double opsPerSecondError, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.opsPerSecondError = opsPerSecondError;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Results are written here so the JIT cannot treat the benchmarked work as dead code
+    private static volatile Object sink;
+
+    private final Map<String, Operation> benchmarks = new LinkedHashMap<>();
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationMillis;
+
+    /**
+     * Creates a benchmark runner.
+     *
+     * @param warmupIterations Number of unmeasured iterations before measuring.
+     * @param iterations       Number of measured iterations.
+     * @param iterationMillis  Duration of every iteration.
+     */
+    public Benchmarks(int warmupIterations, int iterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    /**
+     * Runs the benchmarks from the command line.
+     * Options: --fixtures DIR (default bench/fixtures), --filter TEXT (run only benchmarks containing TEXT),
+     * --warmup N (default 3), --iterations N (default 5), --time MILLIS (per iteration, default 1000),
+     * --output FILE (write the results as JSON lines), --baseline FILE (compare against earlier results)
+     * and --tolerance PERCENT (allowed throughput drop against the baseline, default 10).
+     *
+     * @param args Command-line arguments.
+     * @throws Exception If the fixtures cannot be read or a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        String fixtures = "bench/fixtures";
+        String filter = "";
+        String outputFile = null;
+        String baselineFile = null;
+        int warmup = 3;
+        int iterations = 5;
+        long iterationMillis = 1000;
+        double tolerance = 10;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fixtures":
+                    fixtures = args[++i];
+                    break;
+                case "--filter":
+                    filter = args[++i];
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--output":
+                    outputFile = args[++i];
+                    break;
+                case "--baseline":
+                    baselineFile = args[++i];
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                    return;
+            }
+        }
+
+        String forecastJson = Files.readString(Paths.get(fixtures, "forecast.json"));
+        String forecast16Json = Files.readString(Paths.get(fixtures, "forecast16.json"));
+        String geocodingJson = Files.readString(Paths.get(fixtures, "geocoding.json"));
+
+        HttpServer stub = startStub(forecastJson, geocodingJson);
+        int port = stub.getAddress().getPort();
+
+        // Point DataManagement at the stub before it is first used, and keep the runs free of disk I/O and pacing
+        System.setProperty("weather.geocoding.url", "http://127.0.0.1:" + port + "/v1/search");
+        System.setProperty("weather.forecast.url", "http://127.0.0.1:" + port + "/v1/forecast");
+        System.setProperty("weather.offlineStore.file", "");
+        System.setProperty("weather.prefetch.candidates", "0");
+        System.setProperty("weather.rateLimit.requestsPerSecond", "0");
+
+        Benchmarks runner = new Benchmarks(warmup, iterations, iterationMillis);
+        runner.addBenchmarks(forecastJson, forecast16Json, geocodingJson);
+
+        List<Result> results = runner.run(filter);
+        stub.stop(0);
+
+        if (outputFile != null) {
+            writeResults(Paths.get(outputFile), results);
+        }
+        if (baselineFile != null && !compare(readResults(Paths.get(baselineFile)), results, tolerance)) {
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Registers all benchmarks.
+     *
+     * @param forecastJson   Recorded forecast response of the 7 days the app downloads.
+     * @param forecast16Json Forecast response of the longest range the API offers, 16 days.
+     * @param geocodingJson  Recorded geocoding response.
+     * @throws Exception If the recorded forecast cannot be parsed.
+     */
+    private void addBenchmarks(String forecastJson, String forecast16Json, String geocodingJson) throws Exception {
+        // Parsing, as done for every downloaded response
+        benchmarks.put("parse.forecast", i ->
+                ForecastParser.parse(new StringReader(forecastJson)).getSnapshot(43.7, -79.42));
+        benchmarks.put("parse.forecast.tree", i -> new JSONParser().parse(forecastJson));
+        benchmarks.put("parse.forecast16", i ->
+                ForecastParser.parse(new StringReader(forecast16Json)).getSnapshot(43.7, -79.42));
+        benchmarks.put("parse.forecast16.tree", i -> new JSONParser().parse(forecast16Json));
+        benchmarks.put("parse.geocoding", i -> {
+            LocationContentHandler handler = new LocationContentHandler();
+            new JSONParser().parse(new StringReader(geocodingJson), handler);
+            return handler.getResults();
+        });
+
+        // Lookups done on every display of a forecast
+        WeatherSnapshot forecast = ForecastParser.parse(new StringReader(forecastJson)).getSnapshot(43.7, -79.42);
+
+        benchmarks.put("lookup.currentHour", i -> forecast.getCurrentHourIndex());
+        benchmarks.put("lookup.hourFromNow", i -> forecast.getHourIndexFromNow(i % 48));
+        benchmarks.put("lookup.currentWeather", i -> DataManagement.getCurrentWeather(forecast));
+        benchmarks.put("decode.weatherCode", i -> DataManagement.convertWeatherCode(i % 100));
+        benchmarks.put("decode.conditionSeries", i -> {
+            WeatherCondition worst = WeatherCondition.UNKNOWN;
+            for (int hour = 0; hour < forecast.getHourCount(); hour++) {
+                worst = worst.worse(forecast.getCondition(hour));
+            }
+            return worst;
+        });
+
+        // Whole searches against the stub, once served from the caches and once downloading the forecast
+        benchmarks.put("e2e.getWeatherData.cached", i -> DataManagement.getWeatherData("Toronto"));
+        benchmarks.put("e2e.refreshWeatherData", i -> DataManagement.refreshWeatherData("Toronto"));
+    }
+
+    /**
+     * Runs the benchmarks whose name contains the filter and prints a line per benchmark.
+     *
+     * @param filter Text the benchmark names must contain, or empty to run all.
+     * @return The results, in the order the benchmarks ran.
+     * @throws Exception If a benchmark fails.
+     */
+    public List<Result> run(String filter) throws Exception {
+        List<Result> results = new ArrayList<>();
+
+        System.out.printf("%-28s %16s %12s %12s %12s%n", "Benchmark", "ops/s", "error", "ns/op", "B/op");
+        for (Map.Entry<String, Operation> benchmark : benchmarks.entrySet()) {
+            if (!benchmark.getKey().contains(filter)) {
+                continue;
+            }
+
+            Result result = measure(benchmark.getKey(), benchmark.getValue());
+            results.add(result);
+
+            System.out.printf("%-28s %16.1f %12.1f %12.1f %12.1f%n", result.name, result.opsPerSecond,
+                    result.opsPerSecondError, 1e9 / result.opsPerSecond, result.bytesPerOp);
+        }
+        return results;
+    }
+
+    /**
+     * Warms a benchmark up and measures it.
+     *
+     * @param name      Name of the benchmark.
+     * @param operation The benchmarked operation.
+     * @return Mean throughput with its standard deviation across iterations, and the mean allocation per operation.
+     * @throws Exception If the operation fails.
+     */
+    private Result measure(String name, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+
+        double[] opsPerSecond = new double[iterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            long ops = iteration(operation);
+            long elapsed = System.nanoTime() - start;
+
+            totalBytes += THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+            totalOps += ops;
+            opsPerSecond[i] = ops * 1e9 / elapsed;
+        }
+
+        double mean = 0;
+        for (double value : opsPerSecond) {
+            mean += value / iterations;
+        }
+        double variance = 0;
+        for (double value : opsPerSecond) {
+            variance += (value - mean) * (value - mean) / Math.max(1, iterations - 1);
+        }
+
+        return new Result(name, mean, Math.sqrt(variance), totalOps == 0 ? 0 : (double) totalBytes / totalOps);
+    }
+
+    /**
+     * Runs an operation repeatedly for one iteration.
+     * The clock is only read every few invocations so it does not dominate very short operations.
+     *
+     * @param operation The benchmarked operation.
+     * @return Number of completed invocations.
+     * @throws Exception If the operation fails.
+     */
+    private long iteration(Operation operation) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+        long ops = 0;
+        do {
+            for (int i = 0; i < 64; i++) {
+                sink = operation.run((int) ops++);
+            }
+        } while (System.nanoTime() < deadline);
+        return ops;
+    }
+
+    /**
+     * Starts a local stub of the geocoding and forecast APIs serving the recorded responses,
+     * gzip compressed when the client accepts it like the real APIs.
+     *
+     * @param forecastJson  Recorded forecast response.
+     * @param geocodingJson Recorded geocoding response.
+     * @return The running server, on an ephemeral port.
+     * @throws IOException If the server cannot be started.
+     */
+    private static HttpServer startStub(String forecastJson, String geocodingJson) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+        byte[] forecast = forecastJson.getBytes(StandardCharsets.UTF_8);
+        byte[] geocoding = geocodingJson.getBytes(StandardCharsets.UTF_8);
+        byte[] forecastGzip = gzip(forecast);
+        byte[] geocodingGzip = gzip(geocoding);
+
+        server.createContext("/v1/forecast", exchange -> respond(exchange, forecast, forecastGzip));
+        server.createContext("/v1/search", exchange -> respond(exchange, geocoding, geocodingGzip));
+        server.start();
+        return server;
+    }
+
+    /**
+     * Sends a recorded response from the stub.
+     *
+     * @param exchange The HTTP exchange.
+     * @param body     Uncompressed body.
+     * @param gzipBody Gzip compressed body.
+     * @throws IOException If the response cannot be written.
+     */
+    private static void respond(HttpExchange exchange, byte[] body, byte[] gzipBody) throws IOException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean compressed = acceptEncoding != null && acceptEncoding.contains("gzip");
+        byte[] bytes = compressed ? gzipBody : body;
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (compressed) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @param bytes Data to compress.
+     * @return The data gzip compressed.
+     * @throws IOException Never, the data is compressed in memory.
+     */
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes results as one JSON object per line.
+     *
+     * @param file    File to write.
+     * @param results The results.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeResults(Path file, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (Result result : results) {
+                JSONObject record = new JSONObject();
+                record.put("benchmark", result.name);
+                record.put("ops_per_second", result.opsPerSecond);
+                record.put("ops_per_second_error", result.opsPerSecondError);
+                record.put("bytes_per_op", result.bytesPerOp);
+                out.println(record.toJSONString());
+            }
+        }
+    }
+
+    /**
+     * Reads results written by an earlier run.
+     *
+     * @param file File written with --output.
+     * @return Throughput of every benchmark, by name.
+     * @throws IOException    If the file cannot be read.
+     * @throws ParseException If a line is not valid JSON.
+     */
+    private static Map<String, Double> readResults(Path file) throws IOException, ParseException {
+        Map<String, Double> baseline = new HashMap<>();
+        JSONParser parser = new JSONParser();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                JSONObject record = (JSONObject) parser.parse(line);
+                baseline.put((String) record.get("benchmark"), ((Number) record.get("ops_per_second")).doubleValue());
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Compares the throughput of every benchmark against a baseline and reports regressions.
+     *
+     * @param baseline  Throughput of the earlier run, by benchmark name.
+     * @param results   Results of this run.
+     * @param tolerance Allowed throughput drop, in percent.
+     * @return True if no benchmark got slower than the tolerance allows.
+     */
+    private static boolean compare(Map<String, Double> baseline, List<Result> results, double tolerance) {
+        boolean passed = true;
+        for (Result result : results) {
+            Double before = baseline.get(result.name);
+            if (before == null || before <= 0) {
+                continue;
+            }
+
+            double change = (result.opsPerSecond - before) / before * 100;
+            if (change < -tolerance) {
+                passed = false;
+                System.out.printf("REGRESSION %-28s %+.1f%%%n", result.name, change);
+            } else {
+                System.out.printf("ok         %-28s %+.1f%%%n", result.name, change);
+            }
+        }
+        return passed;
+    }
+}
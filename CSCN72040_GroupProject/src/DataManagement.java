@@ -1,118 +1,583 @@
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Scanner;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Backend logic for fetching weather data from an external API.
  */
 public class DataManagement {
 
+    // Endpoints of the Open-Meteo APIs, overridable to point at a local stub server
+    private static final String GEOCODING_URL =
+            System.getProperty("weather.geocoding.url", "https://geocoding-api.open-meteo.com/v1/search");
+    private static final String FORECAST_URL =
+            System.getProperty("weather.forecast.url", "https://api.open-meteo.com/v1/forecast");
+
+    // Worker threads used for fetches so that callers (e.g. the Swing EDT) never block on the network
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "weather-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Number of runner-up geocoding candidates whose forecasts are prefetched, 0 disables prefetching
+    private static final int PREFETCH_CANDIDATES = Integer.getInteger("weather.prefetch.candidates", 3);
+
+    // Small bounded pool for prefetches, silently dropping work when the queue is full
+    private static final ExecutorService PREFETCH_EXECUTOR = new ThreadPoolExecutor(
+            2, 2, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(32),
+            runnable -> {
+                Thread thread = new Thread(runnable, "weather-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    // Maximum number of coordinates per multi-location forecast request
+    private static final int BATCH_CHUNK_SIZE = Integer.getInteger("weather.batch.chunkSize", 50);
+
+    // Pool running the requests of batch fetches, its size limits how many are sent concurrently
+    private static final ExecutorService BATCH_EXECUTOR = Executors.newFixedThreadPool(
+            Integer.getInteger("weather.batch.concurrency", 4),
+            runnable -> {
+                Thread thread = new Thread(runnable, "weather-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Forecast fetches currently running, by grid cell, so concurrent requests share one download
+    private static final Map<String, CompletableFuture<WeatherSnapshot>> FORECASTS_IN_FLIGHT =
+            new ConcurrentHashMap<>();
+
+    // Geocoding results, since the coordinates of a location never change
+    private static final LocationCache LOCATION_CACHE = LocationCache.fromSystemProperties();
+
+    // Names of all geocoded locations, for search-as-you-type suggestions
+    private static final LocationIndex LOCATION_INDEX = LocationIndex.fromSystemProperties();
+
+    static {
+        for (JSONArray locationData : LOCATION_CACHE.values()) {
+            LOCATION_INDEX.addAll(locationData);
+        }
+    }
+
+    // Parsed forecasts per grid cell, valid until Open-Meteo's next hourly update
+    private static final ForecastCache FORECAST_CACHE =
+            new ForecastCache(Integer.getInteger("weather.forecastCache.size", 512));
+
+    // Latencies of every stage of a lookup, plus error and traffic counters
+    private static final WeatherMetrics METRICS = WeatherMetrics.fromSystemProperties(LOCATION_CACHE, FORECAST_CACHE);
+
+    // Shared HTTP client, so connections to the APIs are reused between requests
+    private static final HttpTransport TRANSPORT = HttpTransport.fromSystemProperties(METRICS);
+
+    // Last downloaded forecast per location on disk, served when the network is unavailable
+    private static final ForecastStore OFFLINE_STORE = ForecastStore.fromSystemProperties();
+
+    /**
+     * Fetches weather data for a given location on a background thread.
+     * Cancelling the returned future interrupts the worker so a stale search stops as soon as possible.
+     *
+     * @param locationName The name of the location.
+     * @return CompletableFuture completed with the forecast, or null if it could not be retrieved.
+     */
+    public static CompletableFuture<WeatherSnapshot> getWeatherDataAsync(String locationName) {
+        return getWeatherDataAsync(locationName, ForecastRequest.DEFAULT);
+    }
+
+    /**
+     * Fetches the requested forecast data for a given location on a background thread.
+     * Cancelling the returned future interrupts the worker so a stale search stops as soon as possible.
+     *
+     * @param locationName The name of the location.
+     * @param request      Fields, time window and units to download.
+     * @return CompletableFuture completed with the forecast, or null if it could not be retrieved.
+     */
+    public static CompletableFuture<WeatherSnapshot> getWeatherDataAsync(String locationName, ForecastRequest request) {
+        return submitFetch(() -> getWeatherData(locationName, request));
+    }
+
+    /**
+     * Fetches weather data for an already geocoded location on a background thread,
+     * skipping the geocoding call entirely.
+     *
+     * @param location One of the locations returned by getLocationData.
+     * @return CompletableFuture completed with the forecast, or null if it could not be retrieved.
+     */
+    public static CompletableFuture<WeatherSnapshot> getWeatherDataAsync(JSONObject location) {
+        return getWeatherDataAsync(location, ForecastRequest.DEFAULT);
+    }
+
+    /**
+     * Fetches the requested forecast data for an already geocoded location on a background thread,
+     * skipping the geocoding call entirely.
+     *
+     * @param location One of the locations returned by getLocationData.
+     * @param request  Fields, time window and units to download.
+     * @return CompletableFuture completed with the forecast, or null if it could not be retrieved.
+     */
+    public static CompletableFuture<WeatherSnapshot> getWeatherDataAsync(JSONObject location, ForecastRequest request) {
+        return submitFetch(() -> getWeatherData(location, request));
+    }
+
+    /**
+     * Geocodes the text typed so far on a background thread and adds the results to the suggestion index.
+     * Unlike getLocationData, the results are not put in the location cache: a partly typed name is rarely
+     * looked up again, and caching every prefix would evict real searches and rewrite the cache file.
+     * Cancelling the returned future interrupts the worker, aborting the request.
+     *
+     * @param prefix Text typed by the user.
+     * @return CompletableFuture completed with the matching locations, or null if the request failed.
+     */
+    public static CompletableFuture<JSONArray> lookupSuggestionsAsync(String prefix) {
+        return submitFetch(() -> {
+            JSONArray locationData = geocode(LocationCache.normalize(prefix));
+            if (locationData != null) {
+                LOCATION_INDEX.addAll(locationData);
+            }
+            return locationData;
+        });
+    }
+
+    /**
+     * Suggests previously geocoded locations whose name, or a word of it, starts with the given text.
+     * Answered from memory, without a network call.
+     *
+     * @param prefix Text typed by the user.
+     * @param limit  Maximum number of suggestions.
+     * @return Matching locations, in the format returned by getLocationData.
+     */
+    public static List<JSONObject> suggestLocations(String prefix, int limit) {
+        return LOCATION_INDEX.suggest(prefix, limit);
+    }
+
+    /**
+     * Runs a fetch on a worker thread.
+     * Cancelling the returned future interrupts the worker.
+     *
+     * @param fetch The fetch to run.
+     * @param <T>   Type of the fetch result.
+     * @return CompletableFuture completed with the result of the fetch.
+     */
+    private static <T> CompletableFuture<T> submitFetch(Supplier<T> fetch) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        // The worker sends its requests with the caller's priority
+        RequestScheduler.Priority priority = RequestScheduler.getPriority();
+        Future<?> task = FETCH_EXECUTOR.submit(() -> {
+            try {
+                result.complete(RequestScheduler.callWithPriority(priority, fetch));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+
+        // Interrupt the worker if the caller abandons the request
+        result.whenComplete((weatherData, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+
+        return result;
+    }
+
     /**
      * Fetches weather data for a given location.
      *
      * @param locationName The name of the location.
-     * @return JSONObject containing weather data.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
+     */
+    public static WeatherSnapshot getWeatherData(String locationName) {
+        return getWeatherData(locationName, ForecastRequest.DEFAULT);
+    }
+
+    /**
+     * Fetches the requested forecast data for a given location.
+     *
+     * @param locationName The name of the location.
+     * @param request      Fields, time window and units to download.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
+     */
+    public static WeatherSnapshot getWeatherData(String locationName, ForecastRequest request) {
+        long start = System.nanoTime();
+        WeatherSnapshot forecast = searchWeatherData(locationName, request);
+
+        METRICS.record(WeatherMetrics.Stage.SEARCH, start);
+
+        // A cancelled search leaves the interrupt flag set and didn't fail
+        if (forecast == null && !Thread.currentThread().isInterrupted()) {
+            METRICS.recordFailure(WeatherMetrics.Stage.SEARCH);
+        }
+        return forecast;
+    }
+
+    /**
+     * Geocodes a location and fetches its forecast, falling back to the offline store.
+     *
+     * @param locationName The name of the location.
+     * @param request      Fields, time window and units to download.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
      */
-    public static JSONObject getWeatherData(String locationName) {
+    private static WeatherSnapshot searchWeatherData(String locationName, ForecastRequest request) {
         // Get location coordinates using the geolocation API
         JSONArray locationData = getLocationData(locationName);
+        if (locationData == null || locationData.isEmpty()) {
+            // Geocoding failed, e.g. because we are offline
+            return getLastKnownWeather(locationName, request);
+        }
+
+        // Stop here if the request was cancelled while geocoding
+        if (Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+
+        // Warm the cache for the other candidates, so switching between ambiguous matches is instant
+        prefetchCandidates(locationData, request);
+
+        WeatherSnapshot forecast = getWeatherData((JSONObject) locationData.get(0), request);
+        if (forecast == null) {
+            return getLastKnownWeather(locationName, request);
+        }
+
+        storeForOffline(locationName, request, forecast);
+        return forecast;
+    }
+
+    /**
+     * Downloads a fresh forecast for a location even if a cached one is still valid,
+     * replacing the cached and stored forecast. Used by background refreshes.
+     *
+     * @param locationName The name of the location.
+     * @return WeatherSnapshot containing the new forecast, or null if it could not be retrieved.
+     */
+    public static WeatherSnapshot refreshWeatherData(String locationName) {
+        return refreshWeatherData(locationName, ForecastRequest.DEFAULT);
+    }
+
+    /**
+     * Downloads the requested forecast data for a location even if a cached forecast is still valid,
+     * replacing the cached and stored forecast.
+     *
+     * @param locationName The name of the location.
+     * @param request      Fields, time window and units to download.
+     * @return WeatherSnapshot containing the new forecast, or null if it could not be retrieved.
+     */
+    public static WeatherSnapshot refreshWeatherData(String locationName, ForecastRequest request) {
+        JSONArray locationData = getLocationData(locationName);
+        if (locationData == null || locationData.isEmpty()) {
+            return null;
+        }
 
-        // Extract latitude and longitude data
         JSONObject location = (JSONObject) locationData.get(0);
+        WeatherSnapshot forecast = fetchForecast((double) location.get("latitude"), (double) location.get("longitude"),
+                request, request.timezoneFor(location));
+        if (forecast != null) {
+            storeForOffline(locationName, request, forecast);
+        }
+        return forecast;
+    }
+
+    /**
+     * Reads the last forecast downloaded for a location from the offline store.
+     *
+     * @param locationName The name of the location.
+     * @return Stale forecast, or null if the location was never stored or the store is disabled.
+     */
+    public static WeatherSnapshot getLastKnownWeather(String locationName) {
+        return getLastKnownWeather(locationName, ForecastRequest.DEFAULT);
+    }
+
+    /**
+     * Reads the last forecast downloaded for a location with the given request from the offline store.
+     * Forecasts downloaded with other fields, units or time window are not returned.
+     *
+     * @param locationName The name of the location.
+     * @param request      Request the forecast must have been downloaded with.
+     * @return Stale forecast, or null if the location was never stored with this request or the store is disabled.
+     */
+    public static WeatherSnapshot getLastKnownWeather(String locationName, ForecastRequest request) {
+        if (OFFLINE_STORE == null) {
+            return null;
+        }
+        return OFFLINE_STORE.get(LocationCache.normalize(locationName), request);
+    }
+
+    /**
+     * Finds the location whose forecast was downloaded last, so it can be shown at startup.
+     *
+     * @return Location name as searched (whitespace shown as +), or null if the offline store is empty or disabled.
+     */
+    public static String getLastKnownLocation() {
+        return getLastKnownLocation(ForecastRequest.DEFAULT);
+    }
+
+    /**
+     * Finds the location whose forecast for the given request was downloaded last.
+     *
+     * @param request Request the forecast must have been downloaded with.
+     * @return Location name as searched (whitespace shown as +), or null if no forecast with this request is stored.
+     */
+    public static String getLastKnownLocation(ForecastRequest request) {
+        return OFFLINE_STORE == null ? null : OFFLINE_STORE.getLatestKey(request);
+    }
+
+    /**
+     * Saves a freshly downloaded forecast in the offline store.
+     *
+     * @param locationName The name of the location.
+     * @param request      Request the forecast was downloaded with.
+     * @param forecast     The forecast.
+     */
+    private static void storeForOffline(String locationName, ForecastRequest request, WeatherSnapshot forecast) {
+        if (OFFLINE_STORE != null && !forecast.isStale()) {
+            OFFLINE_STORE.put(LocationCache.normalize(locationName), request, forecast);
+        }
+    }
+
+    /**
+     * Fetches weather data for an already geocoded location.
+     *
+     * @param location One of the locations returned by getLocationData.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
+     */
+    public static WeatherSnapshot getWeatherData(JSONObject location) {
+        return getWeatherData(location, ForecastRequest.DEFAULT);
+    }
+
+    /**
+     * Fetches the requested forecast data for an already geocoded location,
+     * in the location's time zone unless the request fixes one.
+     *
+     * @param location One of the locations returned by getLocationData.
+     * @param request  Fields, time window and units to download.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
+     */
+    public static WeatherSnapshot getWeatherData(JSONObject location, ForecastRequest request) {
+        // Extract latitude and longitude data
         double latitude = (double) location.get("latitude");
         double longitude = (double) location.get("longitude");
 
-        // Build API request URL with location coordinates
-        String urlString = "https://api.open-meteo.com/v1/forecast?" +
-                "latitude=" + latitude + "&longitude=" + longitude +
-                "&hourly=temperature_2m,relativehumidity_2m,weathercode,windspeed_10m&daily=uv_index_max,sunrise,sunset&timezone=America%2FNew_York";
+        // Get the forecast for these coordinates, from memory when it is still current
+        return getForecastData(latitude, longitude, request, request.timezoneFor(location));
+    }
 
-        try {
-            // Call API and get response
-            HttpURLConnection conn = fetchApiResponse(urlString);
+    /**
+     * Fetches weather data for many locations at once.
+     * Locations are geocoded concurrently, then their forecasts are downloaded in multi-location requests
+     * of up to weather.batch.chunkSize coordinates, with at most weather.batch.concurrency requests in flight.
+     *
+     * @param locationNames The names of the locations.
+     * @return Map from location name to forecast, in input order, without the locations that could not be retrieved.
+     */
+    public static Map<String, WeatherSnapshot> getWeatherData(Collection<String> locationNames) {
+        return getWeatherData(locationNames, ForecastRequest.DEFAULT);
+    }
 
-            // Check for response status
-            // 200 - means that the connection was a success
-            if (conn.getResponseCode() != 200) {
-                System.out.println("Error: Could not connect to API");
-                return null;
-            }
+    /**
+     * Fetches the requested forecast data for many locations at once, see getWeatherData(Collection).
+     *
+     * @param locationNames The names of the locations.
+     * @param request       Fields, time window and units to download.
+     * @return Map from location name to forecast, in input order, without the locations that could not be retrieved.
+     */
+    public static Map<String, WeatherSnapshot> getWeatherData(Collection<String> locationNames, ForecastRequest request) {
+        List<String> names = new ArrayList<>(new LinkedHashSet<>(locationNames));
+
+        // Geocode every location, most of them usually come from the location cache
+        List<Future<JSONArray>> geocodes = new ArrayList<>(names.size());
+        for (String name : names) {
+            geocodes.add(submitBatch(() -> getLocationData(name)));
+        }
 
-            // Store resulting JSON data
-            StringBuilder resultJson = new StringBuilder();
-            Scanner scanner = new Scanner(conn.getInputStream());
-            while (scanner.hasNext()) {
-                // Read and store into the string builder
-                resultJson.append(scanner.nextLine());
+        List<String> foundNames = new ArrayList<>(names.size());
+        double[] latitudes = new double[names.size()];
+        double[] longitudes = new double[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            JSONArray locationData = awaitBatch(geocodes.get(i));
+            if (locationData == null || locationData.isEmpty()) {
+                continue;
             }
 
-            // Close scanner
-            scanner.close();
+            JSONObject location = (JSONObject) locationData.get(0);
+            latitudes[foundNames.size()] = (double) location.get("latitude");
+            longitudes[foundNames.size()] = (double) location.get("longitude");
+            foundNames.add(names.get(i));
+        }
 
-            // Close URL connection
-            conn.disconnect();
+        List<WeatherSnapshot> forecasts = getForecastData(
+                Arrays.copyOf(latitudes, foundNames.size()), Arrays.copyOf(longitudes, foundNames.size()), request);
 
-            // Parse through the data
-            JSONParser parser = new JSONParser();
-            JSONObject resultJsonObj = (JSONObject) parser.parse(String.valueOf(resultJson));
+        Map<String, WeatherSnapshot> fetched = new HashMap<>();
+        for (int i = 0; i < foundNames.size(); i++) {
+            if (forecasts.get(i) != null) {
+                storeForOffline(foundNames.get(i), request, forecasts.get(i));
+                fetched.put(foundNames.get(i), forecasts.get(i));
+            }
+        }
 
-            // Retrieve daily data
-            JSONObject daily = (JSONObject) resultJsonObj.get("daily");
+        Map<String, WeatherSnapshot> weatherData = new LinkedHashMap<>();
+        for (String name : names) {
+            WeatherSnapshot forecast = fetched.get(name);
 
-            // Retrieve hourly data
-            JSONObject hourly = (JSONObject) resultJsonObj.get("hourly");
+            // Fall back to the last known forecast for locations that could not be retrieved
+            if (forecast == null) {
+                forecast = getLastKnownWeather(name, request);
+            }
+            if (forecast != null) {
+                weatherData.put(name, forecast);
+            }
+        }
+        return weatherData;
+    }
 
-            // Get current hour's data
-            JSONArray time = (JSONArray) hourly.get("time");
-            int index = findIndexOfCurrentTime(time);
+    /**
+     * Fetches the forecasts for many coordinates at once, using multi-location requests for the ones not cached.
+     *
+     * @param latitudes  Latitudes of the locations.
+     * @param longitudes Longitudes of the locations, in the same order.
+     * @return Forecasts in the order of the coordinates, with null for the ones that could not be retrieved.
+     */
+    public static List<WeatherSnapshot> getForecastData(double[] latitudes, double[] longitudes) {
+        return getForecastData(latitudes, longitudes, ForecastRequest.DEFAULT);
+    }
 
-            // Get UV index
-            JSONArray uvIndexData = (JSONArray) daily.get("uv_index_max");
-            double uvIndex = (double) uvIndexData.get(0);
+    /**
+     * Fetches the requested forecast data for many coordinates at once,
+     * using multi-location requests for the ones not cached.
+     *
+     * @param latitudes  Latitudes of the locations.
+     * @param longitudes Longitudes of the locations, in the same order.
+     * @param request    Fields, time window and units to download.
+     * @return Forecasts in the order of the coordinates, with null for the ones that could not be retrieved.
+     */
+    public static List<WeatherSnapshot> getForecastData(double[] latitudes, double[] longitudes, ForecastRequest request) {
+        WeatherSnapshot[] forecasts = new WeatherSnapshot[latitudes.length];
+
+        // Only the coordinates without a current cached forecast are downloaded, once per grid cell
+        List<Integer> missing = new ArrayList<>();
+        Map<String, Integer> missingCells = new HashMap<>();
+        for (int i = 0; i < latitudes.length; i++) {
+            forecasts[i] = FORECAST_CACHE.get(latitudes[i], longitudes[i], request);
+            if (forecasts[i] == null
+                    && missingCells.putIfAbsent(ForecastCache.cellKey(latitudes[i], longitudes[i]), i) == null) {
+                missing.add(i);
+            }
+        }
 
-            // Retrieve sunrise and sunset data
-            JSONArray sunriseData = (JSONArray) daily.get("sunrise");
-            JSONArray sunsetData = (JSONArray) daily.get("sunset");
+        // Download the missing forecasts in chunks, running the chunks concurrently
+        List<Future<List<WeatherSnapshot>>> chunks = new ArrayList<>();
+        for (int start = 0; start < missing.size(); start += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = missing.subList(start, Math.min(start + BATCH_CHUNK_SIZE, missing.size()));
+            double[] chunkLatitudes = new double[chunk.size()];
+            double[] chunkLongitudes = new double[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                chunkLatitudes[i] = latitudes[chunk.get(i)];
+                chunkLongitudes[i] = longitudes[chunk.get(i)];
+            }
+            chunks.add(submitBatch(() -> fetchForecasts(chunkLatitudes, chunkLongitudes, request)));
+        }
 
-            // Get sunrise and sunset
-            String sunriseTime = (String) sunriseData.get(0);
-            String sunsetTime = (String) sunsetData.get(0);
+        for (int c = 0; c < chunks.size(); c++) {
+            List<WeatherSnapshot> chunkForecasts = awaitBatch(chunks.get(c));
+            if (chunkForecasts == null) {
+                continue;
+            }
 
-            // Get temperature
-            JSONArray temperatureData = (JSONArray) hourly.get("temperature_2m");
-            double temperature = (double) temperatureData.get(index);
+            for (int i = 0; i < chunkForecasts.size(); i++) {
+                forecasts[missing.get(c * BATCH_CHUNK_SIZE + i)] = chunkForecasts.get(i);
+            }
+        }
 
-            // Get weather code
-            JSONArray weathercode = (JSONArray) hourly.get("weathercode");
-            String weatherCondition = convertWeatherCode((long) weathercode.get(index));
+        // Locations sharing a grid cell share the downloaded forecast
+        for (int i = 0; i < latitudes.length; i++) {
+            if (forecasts[i] == null) {
+                Integer downloaded = missingCells.get(ForecastCache.cellKey(latitudes[i], longitudes[i]));
+                if (downloaded != null) {
+                    forecasts[i] = forecasts[downloaded];
+                }
+            }
+        }
+
+        return Arrays.asList(forecasts);
+    }
+
+    /**
+     * Downloads the forecasts for several coordinates in one multi-location request
+     * and stores them in the forecast cache.
+     *
+     * @param latitudes  Latitudes of the locations.
+     * @param longitudes Longitudes of the locations, in the same order.
+     * @param request    Fields, time window and units to download.
+     * @return Forecasts in the order of the coordinates, or null if the request failed.
+     */
+    private static List<WeatherSnapshot> fetchForecasts(double[] latitudes, double[] longitudes, ForecastRequest request) {
+        StringJoiner latitudeList = new StringJoiner(",");
+        StringJoiner longitudeList = new StringJoiner(",");
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudeList.add(Double.toString(latitudes[i]));
+            longitudeList.add(Double.toString(longitudes[i]));
+        }
 
-            // Get humidity
-            JSONArray relativeHumidity = (JSONArray) hourly.get("relativehumidity_2m");
-            long humidity = (long) relativeHumidity.get(index);
+        // Build API request URL with all coordinates as comma separated lists; an automatic time zone applies to each
+        String urlString = FORECAST_URL + "?" +
+                "latitude=" + latitudeList + "&longitude=" + longitudeList + request.toQuery();
 
-            // Get windspeed
-            JSONArray windspeedData = (JSONArray) hourly.get("windspeed_10m");
-            double windspeed = (double) windspeedData.get(index);
+        try {
+            // Call API and parse the response, which holds one forecast per location in request order
+            ForecastParser parser = parseForecastResponse(fetchApiResponse(urlString, WeatherMetrics.Stage.FORECAST));
 
-            // Build the weather JSON data object
-            JSONObject weatherData = new JSONObject();
-            weatherData.put("temperature", temperature);
-            weatherData.put("weather_condition", weatherCondition);
-            weatherData.put("humidity", humidity);
-            weatherData.put("windspeed", windspeed);
-            weatherData.put("uv_index", uvIndex);
-            weatherData.put("sunrise", sunriseTime);
-            weatherData.put("sunset", sunsetTime);
+            if (parser.getForecastCount() != latitudes.length) {
+                System.out.println("Error: Expected " + latitudes.length + " forecasts but got " + parser.getForecastCount());
+                METRICS.recordFailure(WeatherMetrics.Stage.FORECAST);
+                return null;
+            }
 
-            return weatherData;
+            List<WeatherSnapshot> forecasts = new ArrayList<>(latitudes.length);
+            for (int i = 0; i < latitudes.length; i++) {
+                WeatherSnapshot forecast = parser.getSnapshot(i, latitudes[i], longitudes[i]);
+                FORECAST_CACHE.put(latitudes[i], longitudes[i], request, forecast);
+                forecasts.add(forecast);
+            }
+            return forecasts;
+        } catch (InterruptedIOException e) {
+            // The fetch was cancelled, e.g. by a newer search; not a failure of the API
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
+            METRICS.recordFailure(WeatherMetrics.Stage.FORECAST);
             e.printStackTrace();
         }
 
@@ -120,124 +585,389 @@ public class DataManagement {
     }
 
     /**
-     * Retrieves geographic coordinates for a given location name.
+     * Runs a task of a batch request on the batch executor, with the caller's request priority.
      *
-     * @param locationName The name of the location.
-     * @return JSONArray containing location data.
+     * @param task The task.
+     * @param <T>  Type of the task result.
+     * @return Future of the task result.
      */
-    public static JSONArray getLocationData(String locationName) {
-        // Replace any whitespace in location name to + to adhere to API's request format
-        locationName = locationName.replaceAll(" ", "+");
-
-        // Build API url with location parameter
-        String urlString = "https://geocoding-api.open-meteo.com/v1/search?name=" +
-                locationName + "&count=10&language=en&format=json";
+    private static <T> Future<T> submitBatch(Supplier<T> task) {
+        RequestScheduler.Priority priority = RequestScheduler.getPriority();
+        return BATCH_EXECUTOR.submit(() -> RequestScheduler.callWithPriority(priority, task));
+    }
 
+    /**
+     * Waits for a task of a batch request.
+     *
+     * @param task Task submitted to the batch executor.
+     * @param <T>  Type of the task result.
+     * @return Result of the task, or null if it failed or this thread was interrupted.
+     */
+    private static <T> T awaitBatch(Future<T> task) {
         try {
-            // Call API and get a response
-            HttpURLConnection conn = fetchApiResponse(urlString);
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
 
-            // Check response status
-            // 200 means successful connection
-            if (conn.getResponseCode() != 200) {
-                System.out.println("Error: Could not connect to API");
-                return null;
-            } else {
-                // Store the API results
-                StringBuilder resultJson = new StringBuilder();
-                Scanner scanner = new Scanner(conn.getInputStream());
+    /**
+     * Fetches the forecasts of the runner-up geocoding candidates in the background.
+     * The prefetch executor is bounded and drops work when it is saturated, so prefetching never delays searches.
+     *
+     * @param locationData Candidates returned by getLocationData, the first one being fetched by the caller.
+     * @param request      Request the caller fetches the first candidate with.
+     */
+    private static void prefetchCandidates(JSONArray locationData, ForecastRequest request) {
+        int last = Math.min(locationData.size(), PREFETCH_CANDIDATES + 1);
+        for (int i = 1; i < last; i++) {
+            JSONObject candidate = (JSONObject) locationData.get(i);
+            double latitude = (double) candidate.get("latitude");
+            double longitude = (double) candidate.get("longitude");
+
+            if (FORECAST_CACHE.contains(latitude, longitude, request)) {
+                continue;
+            }
+            // Prefetches must never take request slots from searches
+            String timezone = request.timezoneFor(candidate);
+            PREFETCH_EXECUTOR.execute(() -> RequestScheduler.callWithPriority(RequestScheduler.Priority.BACKGROUND,
+                    () -> getForecastData(latitude, longitude, request, timezone)));
+        }
+    }
 
-                // Read and store the resulting JSON data into our string builder
-                while (scanner.hasNext()) {
-                    resultJson.append(scanner.nextLine());
-                }
+    /**
+     * Fetches the hourly and daily forecast for the given coordinates.
+     * Forecasts are cached per grid cell until the next full hour, when Open-Meteo may publish new data.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
+     */
+    public static WeatherSnapshot getForecastData(double latitude, double longitude) {
+        return getForecastData(latitude, longitude, ForecastRequest.DEFAULT);
+    }
 
-                // Close scanner
-                scanner.close();
+    /**
+     * Fetches the requested forecast data for the given coordinates, cached per grid cell and request.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @param request   Fields, time window and units to download.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
+     */
+    public static WeatherSnapshot getForecastData(double latitude, double longitude, ForecastRequest request) {
+        return getForecastData(latitude, longitude, request, request.getTimezone());
+    }
+
+    /**
+     * Fetches the requested forecast data for the given coordinates, cached per grid cell and request.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @param request   Fields, time window and units to download.
+     * @param timezone  Time zone sent to the API, see ForecastRequest.timezoneFor.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
+     */
+    private static WeatherSnapshot getForecastData(double latitude, double longitude, ForecastRequest request,
+                                                   String timezone) {
+        // Serve the forecast from memory if this grid cell was fetched with this request during the current hour
+        WeatherSnapshot cachedForecast = FORECAST_CACHE.get(latitude, longitude, request);
+        if (cachedForecast != null) {
+            return cachedForecast;
+        }
+
+        // Share the result of a fetch for the same grid cell and request that is already running (e.g. a prefetch)
+        String cacheKey = ForecastCache.key(latitude, longitude, request);
+        CompletableFuture<WeatherSnapshot> flight = new CompletableFuture<>();
+        CompletableFuture<WeatherSnapshot> runningFlight = FORECASTS_IN_FLIGHT.putIfAbsent(cacheKey, flight);
+        if (runningFlight != null) {
+            try {
+                return awaitFlight(runningFlight);
+            } catch (CancellationException e) {
+                // The caller running the fetch was cancelled, which says nothing about this lookup, so start over
+                return getForecastData(latitude, longitude, request, timezone);
+            }
+        }
 
-                // Close URL connection
-                conn.disconnect();
+        WeatherSnapshot forecast = null;
+        boolean cancelled = false;
+        try {
+            forecast = fetchForecast(latitude, longitude, request, timezone);
 
-                // Parse the JSON string into a JSON object
-                JSONParser parser = new JSONParser();
-                JSONObject resultsJsonObj = (JSONObject) parser.parse(String.valueOf(resultJson));
+            // A cancelled fetch didn't fail, so it gets no last known forecast and none is handed to the waiters
+            cancelled = forecast == null && Thread.currentThread().isInterrupted();
 
-                // Get the list of location data the API generated from the location name
-                JSONArray locationData = (JSONArray) resultsJsonObj.get("results");
-                return locationData;
+            // Serve the last forecast stored for this grid cell and request when the download failed
+            if (forecast == null && !cancelled && OFFLINE_STORE != null) {
+                forecast = OFFLINE_STORE.get(latitude, longitude, request);
+            }
+            return forecast;
+        } finally {
+            // Leave the map first, so waiters retrying after a cancellation start a new fetch
+            FORECASTS_IN_FLIGHT.remove(cacheKey, flight);
+            if (cancelled) {
+                flight.cancel(false);
+            } else {
+                flight.complete(forecast);
             }
+        }
+    }
+
+    /**
+     * Downloads and parses the forecast for the given coordinates and stores it in the forecast cache.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @param request   Fields, time window and units to download.
+     * @param timezone  Time zone sent to the API.
+     * @return WeatherSnapshot containing the forecast, or null if it could not be retrieved.
+     */
+    private static WeatherSnapshot fetchForecast(double latitude, double longitude, ForecastRequest request,
+                                                 String timezone) {
+        // Build API request URL with location coordinates and only the fields the caller uses
+        String urlString = FORECAST_URL + "?" +
+                "latitude=" + latitude + "&longitude=" + longitude + request.toQuery(timezone);
 
+        try {
+            // Call API and decode the response as it streams in, keeping only the series we use
+            ForecastParser parser = parseForecastResponse(fetchApiResponse(urlString, WeatherMetrics.Stage.FORECAST));
+
+            WeatherSnapshot forecast = parser.getSnapshot(latitude, longitude);
+            FORECAST_CACHE.put(latitude, longitude, request, forecast);
+            return forecast;
+        } catch (InterruptedIOException e) {
+            // The fetch was cancelled, e.g. by a newer search; not a failure of the API
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
+            METRICS.recordFailure(WeatherMetrics.Stage.FORECAST);
             e.printStackTrace();
         }
 
-        // Couldn't find location
         return null;
     }
 
     /**
-     * Fetches API response for the given URL.
+     * Waits for a fetch started by another thread.
      *
-     * @param urlString The URL to fetch response from.
-     * @return HttpURLConnection object representing the API response.
+     * @param flight Future of the running fetch.
+     * @return The fetched forecast, or null if the fetch failed or this thread was interrupted.
+     * @throws CancellationException If the thread running the fetch was cancelled before it completed.
      */
-    private static HttpURLConnection fetchApiResponse(String urlString) {
+    private static WeatherSnapshot awaitFlight(CompletableFuture<WeatherSnapshot> flight) {
         try {
-            // Attempt to create connection
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-
-            // Set request method to get
-            conn.setRequestMethod("GET");
-
-            // Connect to the API
-            conn.connect();
-            return conn;
-        } catch (IOException e) {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
             e.printStackTrace();
         }
-
-        // Could not make connection
         return null;
     }
 
     /**
-     * Finds the index of the current time in the given time list.
+     * Builds a JSON view of the current hour's weather in a forecast, for output to other programs.
      *
-     * @param timeList The list of times.
-     * @return Index of the current time.
+     * @param forecast The forecast.
+     * @return JSONObject containing weather data.
      */
-    private static int findIndexOfCurrentTime(JSONArray timeList) {
-        String currentTime = getCurrentTime();
+    public static JSONObject getCurrentWeather(WeatherSnapshot forecast) {
+        return getCurrentWeather(forecast, ForecastRequest.DEFAULT);
+    }
 
-        // Iterate through the time list and see which one matches our current time
-        for (int i = 0; i < timeList.size(); i++) {
-            String time = (String) timeList.get(i);
-            if (time.equalsIgnoreCase(currentTime)) {
-                // Return the index
-                return i;
+    /**
+     * Builds a JSON view of the current hour's weather in a forecast, with only the fields of the request
+     * the forecast was downloaded with, and the units of those that have one.
+     * stale tells whether the forecast is a last known one from the offline store, and data_as_of when it was
+     * downloaded.
+     *
+     * @param forecast The forecast.
+     * @param request  Request the forecast was downloaded with.
+     * @return JSONObject containing weather data.
+     */
+    public static JSONObject getCurrentWeather(WeatherSnapshot forecast, ForecastRequest request) {
+        // Build the weather JSON data object
+        JSONObject weatherData = new JSONObject();
+        weatherData.put("latitude", forecast.getLatitude());
+        weatherData.put("longitude", forecast.getLongitude());
+        weatherData.put("stale", forecast.isStale());
+        weatherData.put("data_as_of", Instant.ofEpochMilli(forecast.getFetchedAtMillis()).toString());
+
+        if (forecast.getHourCount() > 0) {
+            int hour = forecast.getCurrentHourIndex();
+            if (request.has(ForecastRequest.HourlyField.TEMPERATURE)) {
+                weatherData.put("temperature", forecast.getTemperature(hour));
+                weatherData.put("temperature_unit", request.getTemperatureUnit().getSymbol());
+            }
+            if (request.has(ForecastRequest.HourlyField.WEATHER_CODE)) {
+                weatherData.put("weather_condition", forecast.getCondition(hour).getLabel());
+            }
+            if (request.has(ForecastRequest.HourlyField.HUMIDITY)) {
+                weatherData.put("humidity", forecast.getHumidity(hour));
+            }
+            if (request.has(ForecastRequest.HourlyField.WINDSPEED)) {
+                weatherData.put("windspeed", forecast.getWindspeed(hour));
+                weatherData.put("windspeed_unit", request.getWindspeedUnit().getSymbol());
+            }
+        }
+
+        if (forecast.getDayCount() > 0) {
+            if (request.has(ForecastRequest.DailyField.UV_INDEX_MAX)) {
+                weatherData.put("uv_index", forecast.getUvIndexMax(0));
+            }
+            if (request.has(ForecastRequest.DailyField.SUNRISE)) {
+                weatherData.put("sunrise", forecast.getSunrise(0));
+            }
+            if (request.has(ForecastRequest.DailyField.SUNSET)) {
+                weatherData.put("sunset", forecast.getSunset(0));
             }
         }
 
-        return 0;
+        return weatherData;
     }
 
     /**
-     * Gets the current time in a specific format.
+     * Returns the cache of forecast responses.
      *
-     * @return String representing the current time.
+     * @return ForecastCache used by getForecastData.
      */
-    private static String getCurrentTime() {
-        // Get current date and time
-        LocalDateTime currentDateTime = LocalDateTime.now();
+    public static ForecastCache getForecastCache() {
+        return FORECAST_CACHE;
+    }
 
-        // Format date to be 2023-09-02T00:00 (this is how it is read in the API)
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH':00'");
+    /**
+     * Returns the latency and error metrics of all lookups.
+     *
+     * @return WeatherMetrics recorded by DataManagement.
+     */
+    public static WeatherMetrics getMetrics() {
+        return METRICS;
+    }
 
-        // Format and print the current date and time
-        String formattedDateTime = currentDateTime.format(formatter);
+    /**
+     * Returns the cache of geocoding results.
+     *
+     * @return LocationCache used by getLocationData.
+     */
+    public static LocationCache getLocationCache() {
+        return LOCATION_CACHE;
+    }
+
+    /**
+     * Retrieves geographic coordinates for a given location name.
+     *
+     * @param locationName The name of the location.
+     * @return JSONArray containing location data.
+     */
+    public static JSONArray getLocationData(String locationName) {
+        // Replace any whitespace in location name to + to adhere to API's request format
+        locationName = LocationCache.normalize(locationName);
 
-        return formattedDateTime;
+        // Use the cached coordinates if this location was looked up before
+        JSONArray cachedLocationData = LOCATION_CACHE.get(locationName);
+        if (cachedLocationData != null) {
+            return cachedLocationData;
+        }
+
+        JSONArray locationData = geocode(locationName);
+        if (locationData != null) {
+            LOCATION_CACHE.put(locationName, locationData);
+            LOCATION_INDEX.addAll(locationData);
+        }
+        return locationData;
+    }
+
+    /**
+     * Calls the geocoding API for a location name, bypassing the location cache.
+     *
+     * @param locationName The normalized name of the location.
+     * @return JSONArray containing location data, or null if the request failed or was cancelled.
+     */
+    private static JSONArray geocode(String locationName) {
+        // Build API url with location parameter
+        String urlString = GEOCODING_URL + "?name=" +
+                URLEncoder.encode(locationName.replace('+', ' '), StandardCharsets.UTF_8) + "&count=10&language=en&format=json";
+
+        try {
+            // Call API and parse the response as it streams in, keeping only the location fields we use
+            LocationContentHandler handler = new LocationContentHandler();
+            parseResponse(fetchApiResponse(urlString, WeatherMetrics.Stage.GEOCODING), handler);
+
+            // Get the list of location data the API generated from the location name
+            return handler.getResults();
+        } catch (InterruptedIOException e) {
+            // The lookup was cancelled, e.g. because the user kept typing
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            METRICS.recordFailure(WeatherMetrics.Stage.GEOCODING);
+            e.printStackTrace();
+        }
+
+        // Couldn't find location
+        return null;
+    }
+
+    /**
+     * Fetches API response for the given URL through the shared HTTP transport.
+     *
+     * @param urlString The URL to fetch response from.
+     * @param stage     Stage the time until the response headers arrived is recorded as.
+     * @return InputStream of the response body, which the caller must close.
+     * @throws IOException If no successful response could be retrieved.
+     */
+    private static InputStream fetchApiResponse(String urlString, WeatherMetrics.Stage stage) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return TRANSPORT.get(urlString);
+        } finally {
+            METRICS.record(stage, start);
+        }
+    }
+
+    /**
+     * Streams an API response body through a JSON content handler and closes it,
+     * recording the time spent reading and parsing the body.
+     *
+     * @param body    Response body to parse.
+     * @param handler Handler receiving the parse events.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the body is not valid JSON.
+     */
+    private static void parseResponse(InputStream body, ContentHandler handler)
+            throws IOException, ParseException {
+        WeatherMetrics.MeteredInputStream meteredBody = METRICS.meter(body);
+        long start = System.nanoTime();
+
+        try (Reader reader = new BufferedReader(new InputStreamReader(meteredBody, StandardCharsets.UTF_8))) {
+            new JSONParser().parse(reader, handler);
+        } finally {
+            METRICS.recordBody(meteredBody, start);
+        }
+    }
+
+    /**
+     * Streams a forecast response body through the forecast parser and closes it,
+     * recording the time spent reading and parsing the body.
+     *
+     * @param body Response body to parse.
+     * @return Parser holding the forecast series of the response.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the body is not a valid forecast response.
+     */
+    private static ForecastParser parseForecastResponse(InputStream body) throws IOException, ParseException {
+        WeatherMetrics.MeteredInputStream meteredBody = METRICS.meter(body);
+        long start = System.nanoTime();
+
+        // The parser buffers the decoded characters itself
+        try (Reader reader = new InputStreamReader(meteredBody, StandardCharsets.UTF_8)) {
+            return ForecastParser.parse(reader);
+        } finally {
+            METRICS.recordBody(meteredBody, start);
+        }
     }
 
     /**
@@ -246,23 +976,7 @@ public class DataManagement {
      * @param weathercode The weather code.
      * @return String representing the weather condition.
      */
-    private static String convertWeatherCode(long weathercode) {
-        String weatherCondition = "";
-        if (weathercode == 0L) {
-            // Clear
-            weatherCondition = "Clear";
-        } else if (weathercode > 0L && weathercode <= 3L) {
-            // Cloudy
-            weatherCondition = "Cloudy";
-        } else if ((weathercode >= 51L && weathercode <= 67L)
-                || (weathercode >= 80L && weathercode <= 99L)) {
-            // Rain
-            weatherCondition = "Rain";
-        } else if (weathercode >= 71L && weathercode <= 77L) {
-            // Snow
-            weatherCondition = "Snow";
-        }
-
-        return weatherCondition;
+    public static String convertWeatherCode(long weathercode) {
+        return WeatherCondition.fromCode(weathercode).getLabel();
     }
 }
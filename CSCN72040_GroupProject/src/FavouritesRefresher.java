@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the forecasts of the user's favourite locations fresh in the background.
+ * Every favourite is re-fetched through DataManagement as soon as its cached forecast expires
+ * (plus a random delay so favourites don't all hit the API at the same second),
+ * and listeners are told about every refreshed forecast.
+ * The favourites are saved to a file, one location per line.
+ */
+public class FavouritesRefresher {
+
+    /**
+     * Receives refreshed forecasts. Called on the refresher's background thread.
+     */
+    public interface Listener {
+        /**
+         * Called after the forecast of a favourite was re-fetched.
+         *
+         * @param location Name of the favourite location.
+         * @param forecast The new forecast.
+         */
+        void weatherRefreshed(String location, WeatherSnapshot forecast);
+    }
+
+    // Delay before retrying a favourite whose refresh failed
+    private static final long RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Path file;
+    private final long jitterMillis;
+
+    private final List<String> favourites = new CopyOnWriteArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Next refresh of every favourite, by normalized location name
+    private final Map<String, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "weather-favourites");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a refresher and loads the saved favourites. Call start() to begin refreshing.
+     *
+     * @param file         File the favourites are saved to, or null to keep them in memory only.
+     * @param jitterMillis Maximum random delay added to every refresh.
+     */
+    public FavouritesRefresher(Path file, long jitterMillis) {
+        this.file = file;
+        this.jitterMillis = jitterMillis;
+
+        if (file != null && Files.exists(file)) {
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (!line.isBlank() && !contains(line)) {
+                        favourites.add(line.trim());
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Creates a refresher configured from system properties:
+     * weather.favourites.file (default favourites.txt, empty keeps favourites in memory only)
+     * and weather.favourites.jitterSeconds (default 120).
+     *
+     * @return FavouritesRefresher configured for this process.
+     */
+    public static FavouritesRefresher fromSystemProperties() {
+        String fileName = System.getProperty("weather.favourites.file", "favourites.txt");
+        long jitterSeconds = Long.getLong("weather.favourites.jitterSeconds", 120L);
+
+        return new FavouritesRefresher(fileName.isEmpty() ? null : Paths.get(fileName), jitterSeconds * 1000L);
+    }
+
+    /**
+     * Starts refreshing all favourites, spreading the first refreshes over the jitter window.
+     */
+    public void start() {
+        for (String location : favourites) {
+            schedule(location, randomJitter());
+        }
+    }
+
+    /**
+     * Stops all background refreshes.
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Registers a listener for refreshed forecasts.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return The favourite locations, in the order they were added.
+     */
+    public List<String> getFavourites() {
+        return new ArrayList<>(favourites);
+    }
+
+    /**
+     * Checks whether a location is a favourite, ignoring case and whitespace differences.
+     *
+     * @param location The name of the location.
+     * @return True if the location is a favourite.
+     */
+    public boolean contains(String location) {
+        return indexOf(location) >= 0;
+    }
+
+    /**
+     * Adds a favourite and refreshes it right away.
+     *
+     * @param location The name of the location.
+     */
+    public void add(String location) {
+        if (contains(location)) {
+            return;
+        }
+
+        favourites.add(location.trim());
+        save();
+        schedule(location, 0);
+    }
+
+    /**
+     * Removes a favourite and cancels its refreshes.
+     *
+     * @param location The name of the location.
+     */
+    public void remove(String location) {
+        int index = indexOf(location);
+        if (index < 0) {
+            return;
+        }
+
+        favourites.remove(index);
+        save();
+
+        ScheduledFuture<?> next = scheduled.remove(LocationCache.normalize(location));
+        if (next != null) {
+            next.cancel(false);
+        }
+    }
+
+    /**
+     * Schedules the next refresh of a favourite, replacing any refresh already scheduled.
+     *
+     * @param location    The name of the location.
+     * @param delayMillis Delay before the refresh.
+     */
+    private void schedule(String location, long delayMillis) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+
+        ScheduledFuture<?> next = scheduler.schedule(() -> refresh(location), delayMillis, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = scheduled.put(LocationCache.normalize(location), next);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    /**
+     * Re-fetches a favourite, notifies the listeners and schedules the refresh after the forecast's next expiry.
+     *
+     * @param location The name of the location.
+     */
+    private void refresh(String location) {
+        if (!contains(location)) {
+            return;
+        }
+
+        WeatherSnapshot forecast = null;
+        try {
+            // Refreshes yield to the user's searches when the request rate is limited
+            forecast = RequestScheduler.callWithPriority(RequestScheduler.Priority.BACKGROUND,
+                    () -> DataManagement.refreshWeatherData(location));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        if (forecast == null) {
+            schedule(location, RETRY_MILLIS + randomJitter());
+            return;
+        }
+
+        for (Listener listener : listeners) {
+            listener.weatherRefreshed(location, forecast);
+        }
+
+        // The cached forecast expires at the next model update, refresh right after it. Refreshing ahead of the
+        // boundary would only fetch the hour that is about to end, and that forecast expires at the same boundary
+        long now = System.currentTimeMillis();
+        schedule(location, ForecastCache.nextExpiry(now) - now + randomJitter());
+    }
+
+    /**
+     * @return Random delay between 0 and the configured jitter.
+     */
+    private long randomJitter() {
+        return jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis) : 0;
+    }
+
+    /**
+     * Finds a favourite, ignoring case and whitespace differences.
+     *
+     * @param location The name of the location.
+     * @return Index of the favourite, or -1 if it is not a favourite.
+     */
+    private int indexOf(String location) {
+        String key = LocationCache.normalize(location);
+        for (int i = 0; i < favourites.size(); i++) {
+            if (LocationCache.normalize(favourites.get(i)).equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the favourites to the favourites file.
+     */
+    private void save() {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.write(file, favourites, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cache of parsed forecasts keyed by latitude/longitude grid cell and request signature.
+ * Open-Meteo refreshes its forecasts at most once per hour, so an entry expires at the next full hour
+ * and every lookup before then is served from memory.
+ */
+public class ForecastCache {
+
+    // Coordinates are rounded to this many cells per degree (0.01 degrees is roughly 1 km)
+    private static final int CELLS_PER_DEGREE = 100;
+
+    /**
+     * A cached forecast and the time it stops being valid.
+     */
+    private static class Entry {
+        private final WeatherSnapshot forecast;
+        private final long expiresAtMillis;
+
+        private Entry(WeatherSnapshot forecast, long expiresAtMillis) {
+            this.forecast = forecast;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries Maximum number of forecasts kept in memory.
+     */
+    public ForecastCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Builds the key of the grid cell containing the given coordinates.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @return Key identifying the grid cell.
+     */
+    public static String cellKey(double latitude, double longitude) {
+        return Math.round(latitude * CELLS_PER_DEGREE) + "," + Math.round(longitude * CELLS_PER_DEGREE);
+    }
+
+    /**
+     * Builds the key of a forecast, so forecasts of the same grid cell with different fields or units
+     * are cached separately.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @param request   Request the forecast was downloaded with.
+     * @return Key identifying the grid cell and request.
+     */
+    public static String key(double latitude, double longitude, ForecastRequest request) {
+        return cellKey(latitude, longitude) + request.getSignature();
+    }
+
+    /**
+     * Computes when a forecast fetched now should expire, which is the start of the next hour.
+     *
+     * @param nowMillis Current time in milliseconds since the epoch.
+     * @return Expiry time in milliseconds since the epoch.
+     */
+    public static long nextExpiry(long nowMillis) {
+        return Instant.ofEpochMilli(nowMillis).truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS).toEpochMilli();
+    }
+
+    /**
+     * Looks up the forecast for the grid cell containing the given coordinates.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @param request   Request the forecast must have been downloaded with.
+     * @return Cached forecast, or null if absent or expired.
+     */
+    public WeatherSnapshot get(double latitude, double longitude, ForecastRequest request) {
+        String key = key(latitude, longitude, request);
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.expiresAtMillis <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.forecast;
+    }
+
+    /**
+     * Checks whether a current forecast is cached for the given coordinates, without counting a hit or miss.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @param request   Request the forecast must have been downloaded with.
+     * @return True if a forecast that has not expired is cached.
+     */
+    public boolean contains(double latitude, double longitude, ForecastRequest request) {
+        Entry entry = entries.get(key(latitude, longitude, request));
+        return entry != null && entry.expiresAtMillis > System.currentTimeMillis();
+    }
+
+    /**
+     * Stores the forecast for the grid cell containing the given coordinates until the next full hour.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @param request   Request the forecast was downloaded with.
+     * @param forecast  Parsed forecast.
+     */
+    public void put(double latitude, double longitude, ForecastRequest request, WeatherSnapshot forecast) {
+        long now = System.currentTimeMillis();
+        entries.put(key(latitude, longitude, request), new Entry(forecast, nextExpiry(now)));
+
+        if (entries.size() > maxEntries) {
+            evict(now);
+        }
+    }
+
+    /**
+     * @return Number of lookups answered from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of lookups that had to go to the forecast API.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of forecasts currently cached.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes expired entries, then the entries closest to expiry until the cache is within its bound.
+     *
+     * @param now Current time in milliseconds since the epoch.
+     */
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.expiresAtMillis <= now);
+
+        while (entries.size() > maxEntries) {
+            String oldestKey = null;
+            long oldestExpiry = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().expiresAtMillis < oldestExpiry) {
+                    oldestKey = entry.getKey();
+                    oldestExpiry = entry.getValue().expiresAtMillis;
+                }
+            }
+
+            if (oldestKey == null) {
+                return;
+            }
+            entries.remove(oldestKey);
+        }
+    }
+}
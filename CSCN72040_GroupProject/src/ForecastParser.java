@@ -0,0 +1,727 @@
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for Open-Meteo forecast responses.
+ * The response is read through a fixed character buffer and decoded in place: numbers and times of the series
+ * go straight into primitive buffers without creating a String or boxing a number, and every other value
+ * (units, metadata, unused series) is skipped without being decoded.
+ * Both single-location responses (one object) and multi-location responses (an array of objects) are supported.
+ */
+public class ForecastParser {
+
+    // Hourly and daily series read by DataManagement, by position in the Forecast series arrays
+    private static final String[] HOURLY_FIELDS = {"time", "temperature_2m", "relativehumidity_2m", "weathercode", "windspeed_10m"};
+    private static final String[] DAILY_FIELDS = {"time", "uv_index_max", "sunrise", "sunset"};
+
+    // Exactly representable powers of ten, for decoding numbers without rounding twice
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // Largest mantissa a double holds exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Growable buffer of the values of one series. Times are stored as minutes since the epoch
+     * and missing values as NaN.
+     */
+    private static class Series {
+        private double[] values = new double[192];
+        private int size;
+
+        private void add(double value) {
+            if (size == values.length) {
+                double[] grown = new double[size * 2];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Series collected for one location. Series the request did not ask for stay empty.
+     */
+    private static class Forecast {
+        private final Series[] hourly = newSeries(HOURLY_FIELDS.length);
+        private final Series[] daily = newSeries(DAILY_FIELDS.length);
+
+        // Offset of the local times from UTC
+        private int utcOffsetSeconds;
+
+        private static Series[] newSeries(int count) {
+            Series[] series = new Series[count];
+            for (int i = 0; i < count; i++) {
+                series[i] = new Series();
+            }
+            return series;
+        }
+    }
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    // Characters consumed before the current buffer, for error positions
+    private int consumed;
+
+    // Reused for keys and string values, so reading them allocates nothing once it has grown
+    private final StringBuilder text = new StringBuilder(32);
+
+    // Forecasts in response order; a multi-location request returns an array with one object per location
+    private final List<Forecast> forecasts = new ArrayList<>(1);
+
+    private ForecastParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Parses a forecast response.
+     *
+     * @param reader Reader of the response body. It is read to the end but not closed.
+     * @return Parser holding the collected series.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the body is not a valid forecast response.
+     */
+    public static ForecastParser parse(Reader reader) throws IOException, ParseException {
+        ForecastParser parser = new ForecastParser(reader);
+        parser.parseResponse();
+        return parser;
+    }
+
+    /**
+     * @return Number of locations in the parsed response.
+     */
+    public int getForecastCount() {
+        return forecasts.size();
+    }
+
+    /**
+     * Builds the forecast of the first location from the collected series.
+     *
+     * @param latitude  Latitude the forecast was requested for.
+     * @param longitude Longitude the forecast was requested for.
+     * @return WeatherSnapshot holding the collected series.
+     */
+    public WeatherSnapshot getSnapshot(double latitude, double longitude) {
+        return getSnapshot(0, latitude, longitude);
+    }
+
+    /**
+     * Builds the forecast of one location of a multi-location response from the collected series.
+     * Values of fields missing from the response are stored as the snapshot's missing markers.
+     *
+     * @param index     Position of the location in the request.
+     * @param latitude  Latitude the forecast was requested for.
+     * @param longitude Longitude the forecast was requested for.
+     * @return WeatherSnapshot holding the collected series.
+     */
+    public WeatherSnapshot getSnapshot(int index, double latitude, double longitude) {
+        Forecast forecast = forecasts.get(index);
+
+        Series time = forecast.hourly[0];
+        Series temperature = forecast.hourly[1];
+        Series humidity = forecast.hourly[2];
+        Series weathercode = forecast.hourly[3];
+        Series windspeed = forecast.hourly[4];
+
+        int hours = time.size;
+        int[] epochHours = new int[hours];
+        double[] temperatureValues = new double[hours];
+        short[] humidityValues = new short[hours];
+        byte[] weatherCodeValues = new byte[hours];
+        double[] windspeedValues = new double[hours];
+
+        for (int i = 0; i < hours; i++) {
+            epochHours[i] = (int) (time.values[i] / 60);
+            temperatureValues[i] = valueAt(temperature, i);
+            humidityValues[i] = (short) valueAt(humidity, i, WeatherSnapshot.MISSING_HUMIDITY);
+            weatherCodeValues[i] = (byte) valueAt(weathercode, i, WeatherSnapshot.MISSING_WEATHER_CODE);
+            windspeedValues[i] = valueAt(windspeed, i);
+        }
+
+        Series day = forecast.daily[0];
+        Series uvIndex = forecast.daily[1];
+        Series sunrise = forecast.daily[2];
+        Series sunset = forecast.daily[3];
+
+        // Every daily response has a time series, fall back to the longest field if it was left out
+        int days = Math.max(day.size, Math.max(uvIndex.size, Math.max(sunrise.size, sunset.size)));
+        double[] uvIndexValues = new double[days];
+        int[] sunriseValues = new int[days];
+        int[] sunsetValues = new int[days];
+
+        for (int i = 0; i < days; i++) {
+            uvIndexValues[i] = valueAt(uvIndex, i);
+            sunriseValues[i] = (int) valueAt(sunrise, i, WeatherSnapshot.MISSING_TIME);
+            sunsetValues[i] = (int) valueAt(sunset, i, WeatherSnapshot.MISSING_TIME);
+        }
+
+        return new WeatherSnapshot(latitude, longitude, forecast.utcOffsetSeconds, System.currentTimeMillis(),
+                epochHours, temperatureValues, humidityValues, weatherCodeValues, windspeedValues,
+                uvIndexValues, sunriseValues, sunsetValues);
+    }
+
+    /**
+     * Parses the response: one forecast object, or an array of them for a multi-location request.
+     *
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the body is not a valid forecast response.
+     */
+    private void parseResponse() throws IOException, ParseException {
+        int c = nextToken();
+        if (c == '[') {
+            position++;
+            if (nextToken() == ']') {
+                position++;
+            } else {
+                do {
+                    expect('{');
+                    parseForecast();
+                } while (nextSeparator(']'));
+            }
+        } else {
+            expect('{');
+            parseForecast();
+        }
+
+        if (nextToken() != -1) {
+            throw unexpected();
+        }
+    }
+
+    /**
+     * Parses the members of one forecast object, after its opening brace.
+     *
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the object is malformed.
+     */
+    private void parseForecast() throws IOException, ParseException {
+        Forecast forecast = new Forecast();
+        forecasts.add(forecast);
+
+        if (nextToken() == '}') {
+            position++;
+            return;
+        }
+
+        do {
+            readKey();
+            if (contentEquals("hourly")) {
+                parseSection(forecast.hourly, HOURLY_FIELDS);
+            } else if (contentEquals("daily")) {
+                parseSection(forecast.daily, DAILY_FIELDS);
+            } else if (contentEquals("utc_offset_seconds") && isNumberStart(nextToken())) {
+                forecast.utcOffsetSeconds = (int) readNumber();
+            } else {
+                skipValue();
+            }
+        } while (nextSeparator('}'));
+    }
+
+    /**
+     * Parses the hourly or daily object, collecting the known series and skipping the others.
+     *
+     * @param series Series of the section, in the order of fields.
+     * @param fields Names of the known series.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the section is malformed.
+     */
+    private void parseSection(Series[] series, String[] fields) throws IOException, ParseException {
+        if (nextToken() != '{') {
+            skipValue();
+            return;
+        }
+        position++;
+
+        if (nextToken() == '}') {
+            position++;
+            return;
+        }
+
+        do {
+            readKey();
+            int field = indexOf(fields);
+            if (field >= 0 && nextToken() == '[') {
+                parseSeries(series[field]);
+            } else {
+                skipValue();
+            }
+        } while (nextSeparator('}'));
+    }
+
+    /**
+     * Parses an array of numbers, times and nulls into a series.
+     *
+     * @param series Series receiving the values.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the array is malformed.
+     */
+    private void parseSeries(Series series) throws IOException, ParseException {
+        expect('[');
+        if (nextToken() == ']') {
+            position++;
+            return;
+        }
+
+        do {
+            int c = nextToken();
+            if (c == '"') {
+                readString();
+                series.add(parseEpochMinute(text));
+            } else if (isNumberStart(c)) {
+                series.add(readNumber());
+            } else {
+                // null, or any other value that isn't a number
+                skipValue();
+                series.add(Double.NaN);
+            }
+        } while (nextSeparator(']'));
+    }
+
+    /**
+     * Reads an object key and the colon after it into the text buffer.
+     *
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If no key follows.
+     */
+    private void readKey() throws IOException, ParseException {
+        if (nextToken() != '"') {
+            throw unexpected();
+        }
+        readString();
+        expect(':');
+    }
+
+    /**
+     * Reads a string, whose opening quote is the next character, into the text buffer.
+     *
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the string is not terminated or has an invalid escape.
+     */
+    private void readString() throws IOException, ParseException {
+        position++;
+        text.setLength(0);
+
+        while (true) {
+            if (position == limit && !fill()) {
+                throw unexpected();
+            }
+
+            // Copy runs of plain characters at once
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+
+            if (position == limit) {
+                continue;
+            }
+            if (buffer[position++] == '"') {
+                return;
+            }
+            text.append(readEscape());
+        }
+    }
+
+    /**
+     * Decodes the escape sequence following a backslash.
+     *
+     * @return The escaped character.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the escape is invalid.
+     */
+    private char readEscape() throws IOException, ParseException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw unexpected();
+                    }
+                    value = value * 16 + digit;
+                }
+                return (char) value;
+            default:
+                throw unexpected();
+        }
+    }
+
+    /**
+     * Reads a number. Numbers of up to 15 significant digits with a small exponent, which are all the API sends,
+     * are decoded exactly from their digits; anything else goes through Double.parseDouble.
+     *
+     * @return The number.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the number is malformed.
+     */
+    private double readNumber() throws IOException, ParseException {
+        text.setLength(0);
+        boolean negative = false;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        int exponent = 0;
+        boolean exact = true;
+
+        int c = peek();
+        if (c == '-') {
+            negative = true;
+            text.append('-');
+            position++;
+            c = peek();
+        }
+
+        // Integer part
+        while (c >= '0' && c <= '9') {
+            mantissa = mantissa * 10 + (c - '0');
+            digits++;
+            text.append((char) c);
+            position++;
+            c = peek();
+        }
+
+        // Fraction
+        if (c == '.') {
+            text.append('.');
+            position++;
+            c = peek();
+            while (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                scale++;
+                text.append((char) c);
+                position++;
+                c = peek();
+            }
+        }
+
+        // Exponent
+        if (c == 'e' || c == 'E') {
+            exact = false;
+            text.append('e');
+            position++;
+            c = peek();
+            if (c == '+' || c == '-') {
+                text.append((char) c);
+                position++;
+                c = peek();
+            }
+            while (c >= '0' && c <= '9') {
+                exponent = exponent * 10 + (c - '0');
+                text.append((char) c);
+                position++;
+                c = peek();
+            }
+        }
+
+        if (digits == 0) {
+            throw unexpected();
+        }
+
+        if (exact && digits <= 15 && mantissa < MAX_EXACT_MANTISSA && scale < POWERS_OF_TEN.length) {
+            // Both operands are exact, so the division rounds once, like Double.parseDouble
+            double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(text.toString());
+    }
+
+    /**
+     * Skips the next value, whatever its type.
+     *
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the value is malformed.
+     */
+    private void skipValue() throws IOException, ParseException {
+        int c = nextToken();
+        if (c == '{') {
+            position++;
+            if (nextToken() == '}') {
+                position++;
+                return;
+            }
+            do {
+                readKey();
+                skipValue();
+            } while (nextSeparator('}'));
+        } else if (c == '[') {
+            position++;
+            if (nextToken() == ']') {
+                position++;
+                return;
+            }
+            do {
+                skipValue();
+            } while (nextSeparator(']'));
+        } else if (c == '"') {
+            readString();
+        } else if (isNumberStart(c)) {
+            readNumber();
+        } else if (c == 't') {
+            skipLiteral("true");
+        } else if (c == 'f') {
+            skipLiteral("false");
+        } else if (c == 'n') {
+            skipLiteral("null");
+        } else {
+            throw unexpected();
+        }
+    }
+
+    /**
+     * Skips a literal such as null.
+     *
+     * @param literal The expected literal.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If the next characters differ.
+     */
+    private void skipLiteral(String literal) throws IOException, ParseException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw unexpected();
+            }
+        }
+    }
+
+    /**
+     * Consumes the comma between two members or elements, or the closing bracket.
+     *
+     * @param close The closing bracket of the current object or array.
+     * @return True if another member or element follows, false if the object or array ended.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If neither a comma nor the closing bracket follows.
+     */
+    private boolean nextSeparator(char close) throws IOException, ParseException {
+        int c = nextToken();
+        position++;
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        position--;
+        throw unexpected();
+    }
+
+    /**
+     * Consumes the next non-whitespace character, which must be the given one.
+     *
+     * @param expected The expected character.
+     * @throws IOException    If the body cannot be read.
+     * @throws ParseException If another character follows.
+     */
+    private void expect(char expected) throws IOException, ParseException {
+        if (nextToken() != expected) {
+            throw unexpected();
+        }
+        position++;
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it.
+     *
+     * @return The next character, or -1 at the end of the body.
+     * @throws IOException If the body cannot be read.
+     */
+    private int nextToken() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Returns the next character without consuming it.
+     *
+     * @return The next character, or -1 at the end of the body.
+     * @throws IOException If the body cannot be read.
+     */
+    private int peek() throws IOException {
+        return position < limit || fill() ? buffer[position] : -1;
+    }
+
+    /**
+     * Consumes the next character.
+     *
+     * @return The character, or -1 at the end of the body.
+     * @throws IOException If the body cannot be read.
+     */
+    private int read() throws IOException {
+        return position < limit || fill() ? buffer[position++] : -1;
+    }
+
+    /**
+     * Refills the buffer from the reader.
+     *
+     * @return False at the end of the body.
+     * @throws IOException If the body cannot be read.
+     */
+    private boolean fill() throws IOException {
+        consumed += limit;
+        position = 0;
+        limit = 0;
+
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    /**
+     * @return ParseException for the character at the current position.
+     */
+    private ParseException unexpected() {
+        Object character = position < limit ? (Object) buffer[position] : null;
+        return new ParseException(consumed + position, ParseException.ERROR_UNEXPECTED_CHAR, character);
+    }
+
+    /**
+     * @param c A character, or -1.
+     * @return True if a JSON number can start with the character.
+     */
+    private static boolean isNumberStart(int c) {
+        return c == '-' || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Compares the text buffer with a constant without creating a String.
+     *
+     * @param value The constant.
+     * @return True if the text buffer holds the constant.
+     */
+    private boolean contentEquals(String value) {
+        return value.contentEquals(text);
+    }
+
+    /**
+     * Finds the text buffer in a list of field names.
+     *
+     * @param fields The field names.
+     * @return Index of the matching field, or -1.
+     */
+    private int indexOf(String[] fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (contentEquals(fields[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a local date time such as 2023-09-02T00:00, or a date of the daily series such as 2023-09-02,
+     * into minutes since the epoch.
+     * The fixed formats the API uses are decoded digit by digit; anything else goes through LocalDateTime.parse.
+     *
+     * @param time The local date time or date.
+     * @return Minutes since the epoch, treating the local time as UTC and a date as its midnight.
+     */
+    static long parseEpochMinute(CharSequence time) {
+        int length = time.length();
+        if ((length == 16 || length == 10) && time.charAt(4) == '-' && time.charAt(7) == '-') {
+            int year = digits(time, 0, 4);
+            int month = digits(time, 5, 7);
+            int day = digits(time, 8, 10);
+            int hour = 0;
+            int minute = 0;
+            if (length == 16) {
+                hour = time.charAt(10) == 'T' && time.charAt(13) == ':' ? digits(time, 11, 13) : -1;
+                minute = digits(time, 14, 16);
+            }
+
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+                return LocalDate.of(year, month, day).toEpochDay() * 1440L + hour * 60L + minute;
+            }
+        }
+
+        if (length == 10) {
+            return LocalDate.parse(time).toEpochDay() * 1440L;
+        }
+        return LocalDateTime.parse(time).toEpochSecond(ZoneOffset.UTC) / 60L;
+    }
+
+    /**
+     * Decodes a run of decimal digits.
+     *
+     * @param text  Text containing the digits.
+     * @param start Index of the first digit.
+     * @param end   Index after the last digit.
+     * @return The decoded number, or -1 if a character is not a digit.
+     */
+    private static int digits(CharSequence text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Reads a value of a series that may be shorter than expected.
+     *
+     * @param series Series to read.
+     * @param index  Index of the value.
+     * @return The value, or NaN if the series has no value at this index.
+     */
+    private static double valueAt(Series series, int index) {
+        return index < series.size ? series.values[index] : Double.NaN;
+    }
+
+    /**
+     * Reads a value of an integer series that may be shorter than expected or hold nulls.
+     *
+     * @param series  Series to read.
+     * @param index   Index of the value.
+     * @param missing Value returned when the series has no value at this index.
+     * @return The value, or missing.
+     */
+    private static double valueAt(Series series, int index, int missing) {
+        double value = valueAt(series, index);
+        return Double.isNaN(value) ? missing : value;
+    }
+}
@@ -0,0 +1,486 @@
+import org.json.simple.JSONObject;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Immutable description of what a forecast request asks the Open-Meteo API for: the hourly and daily fields,
+ * how many days or hours, the units and the time zone. Every field not asked for is left out of the response,
+ * so a caller that shows only the current hour downloads and parses a few hundred bytes instead of a week of series.
+ * Forecasts are cached per request signature, so callers asking for different data never share a cached forecast.
+ *
+ * Requests are created with a builder, e.g. ForecastRequest.builder().forecastDays(1).forecastHours(1).build().
+ */
+public final class ForecastRequest {
+
+    /**
+     * Hourly fields of the forecast API.
+     */
+    public enum HourlyField {
+        TEMPERATURE("temperature_2m"),
+        HUMIDITY("relativehumidity_2m"),
+        WEATHER_CODE("weathercode"),
+        WINDSPEED("windspeed_10m");
+
+        private final String apiName;
+
+        HourlyField(String apiName) {
+            this.apiName = apiName;
+        }
+
+        /**
+         * @return Name of the field in API requests and responses.
+         */
+        public String getApiName() {
+            return apiName;
+        }
+    }
+
+    /**
+     * Daily fields of the forecast API.
+     */
+    public enum DailyField {
+        UV_INDEX_MAX("uv_index_max"),
+        SUNRISE("sunrise"),
+        SUNSET("sunset");
+
+        private final String apiName;
+
+        DailyField(String apiName) {
+            this.apiName = apiName;
+        }
+
+        /**
+         * @return Name of the field in API requests and responses.
+         */
+        public String getApiName() {
+            return apiName;
+        }
+    }
+
+    /**
+     * Temperature units of the forecast API.
+     */
+    public enum TemperatureUnit {
+        CELSIUS("celsius", "C"),
+        FAHRENHEIT("fahrenheit", "F");
+
+        private final String apiName;
+        private final String symbol;
+
+        TemperatureUnit(String apiName, String symbol) {
+            this.apiName = apiName;
+            this.symbol = symbol;
+        }
+
+        /**
+         * Finds the unit with the given API name.
+         *
+         * @param name API name of the unit, e.g. fahrenheit.
+         * @return The unit.
+         * @throws IllegalArgumentException If no unit has this name.
+         */
+        public static TemperatureUnit fromApiName(String name) {
+            for (TemperatureUnit unit : values()) {
+                if (unit.apiName.equalsIgnoreCase(name)) {
+                    return unit;
+                }
+            }
+            throw new IllegalArgumentException("Unknown unit " + name);
+        }
+
+        /**
+         * @return Name of the unit in API requests.
+         */
+        public String getApiName() {
+            return apiName;
+        }
+
+        /**
+         * @return Symbol shown after a temperature, e.g. C.
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    /**
+     * Wind speed units of the forecast API.
+     */
+    public enum WindspeedUnit {
+        KMH("kmh", "km/h"),
+        MS("ms", "m/s"),
+        MPH("mph", "mph"),
+        KNOTS("kn", "kn");
+
+        private final String apiName;
+        private final String symbol;
+
+        WindspeedUnit(String apiName, String symbol) {
+            this.apiName = apiName;
+            this.symbol = symbol;
+        }
+
+        /**
+         * Finds the unit with the given API name.
+         *
+         * @param name API name of the unit, e.g. mph.
+         * @return The unit.
+         * @throws IllegalArgumentException If no unit has this name.
+         */
+        public static WindspeedUnit fromApiName(String name) {
+            for (WindspeedUnit unit : values()) {
+                if (unit.apiName.equalsIgnoreCase(name)) {
+                    return unit;
+                }
+            }
+            throw new IllegalArgumentException("Unknown unit " + name);
+        }
+
+        /**
+         * @return Name of the unit in API requests.
+         */
+        public String getApiName() {
+            return apiName;
+        }
+
+        /**
+         * @return Symbol shown after a wind speed, e.g. km/h.
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    // Time zone value asking the API to use the local time zone of each location
+    public static final String AUTO_TIMEZONE = "auto";
+
+    // Longest forecast the API offers
+    public static final int MAX_FORECAST_DAYS = 16;
+
+    /**
+     * Every field, 7 days, metric units in the location's time zone; what the GUI shows.
+     */
+    public static final ForecastRequest DEFAULT = builder().build();
+
+    /**
+     * Every field of the current hour and today only; what the headless mode and the HTTP service return.
+     */
+    public static final ForecastRequest CURRENT = builder().forecastDays(1).forecastHours(1).build();
+
+    private final EnumSet<HourlyField> hourlyFields;
+    private final EnumSet<DailyField> dailyFields;
+    private final int forecastDays;
+    private final int forecastHours;
+    private final TemperatureUnit temperatureUnit;
+    private final WindspeedUnit windspeedUnit;
+    private final String timezone;
+
+    // Query string of everything but the coordinates and time zone, computed once as it is also the cache key
+    private final String fieldQuery;
+
+    private ForecastRequest(Builder builder) {
+        this.hourlyFields = EnumSet.copyOf(builder.hourlyFields);
+        this.dailyFields = EnumSet.copyOf(builder.dailyFields);
+        this.forecastDays = builder.forecastDays;
+        this.forecastHours = builder.forecastHours;
+        this.temperatureUnit = builder.temperatureUnit;
+        this.windspeedUnit = builder.windspeedUnit;
+        this.timezone = builder.timezone;
+        this.fieldQuery = buildFieldQuery();
+    }
+
+    /**
+     * Creates a builder initialized with the default request: every field, 7 days, Celsius, km/h and
+     * the location's own time zone.
+     *
+     * @return A new builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a builder initialized with this request, for deriving a similar request.
+     *
+     * @return A new builder.
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.hourlyFields = EnumSet.copyOf(hourlyFields);
+        builder.dailyFields = EnumSet.copyOf(dailyFields);
+        builder.forecastDays = forecastDays;
+        builder.forecastHours = forecastHours;
+        builder.temperatureUnit = temperatureUnit;
+        builder.windspeedUnit = windspeedUnit;
+        builder.timezone = timezone;
+        return builder;
+    }
+
+    /**
+     * @return Hourly fields asked for.
+     */
+    public Set<HourlyField> getHourlyFields() {
+        return Collections.unmodifiableSet(hourlyFields);
+    }
+
+    /**
+     * @return Daily fields asked for.
+     */
+    public Set<DailyField> getDailyFields() {
+        return Collections.unmodifiableSet(dailyFields);
+    }
+
+    /**
+     * @param field An hourly field.
+     * @return True if the field is asked for.
+     */
+    public boolean has(HourlyField field) {
+        return hourlyFields.contains(field);
+    }
+
+    /**
+     * @param field A daily field.
+     * @return True if the field is asked for.
+     */
+    public boolean has(DailyField field) {
+        return dailyFields.contains(field);
+    }
+
+    /**
+     * @return Number of days asked for, starting today.
+     */
+    public int getForecastDays() {
+        return forecastDays;
+    }
+
+    /**
+     * @return Number of hours asked for, starting at the current hour, or 0 for every hour of the days.
+     */
+    public int getForecastHours() {
+        return forecastHours;
+    }
+
+    /**
+     * @return Unit of the temperatures.
+     */
+    public TemperatureUnit getTemperatureUnit() {
+        return temperatureUnit;
+    }
+
+    /**
+     * @return Unit of the wind speeds.
+     */
+    public WindspeedUnit getWindspeedUnit() {
+        return windspeedUnit;
+    }
+
+    /**
+     * @return Time zone of the series, AUTO_TIMEZONE for the location's own time zone.
+     */
+    public String getTimezone() {
+        return timezone;
+    }
+
+    /**
+     * Picks the time zone to send for a geocoded location. With AUTO_TIMEZONE the time zone the geocoding API
+     * returned is sent, so the forecast API doesn't have to look it up again.
+     *
+     * @param location One of the locations returned by getLocationData.
+     * @return Time zone to send for the location.
+     */
+    public String timezoneFor(JSONObject location) {
+        Object locationTimezone = location.get("timezone");
+        if (AUTO_TIMEZONE.equals(timezone) && locationTimezone instanceof String && !((String) locationTimezone).isEmpty()) {
+            return (String) locationTimezone;
+        }
+        return timezone;
+    }
+
+    /**
+     * Identifies the data this request returns for a location, used to key cached forecasts.
+     * AUTO_TIMEZONE and a location's own time zone return the same data, so the time zone is only part of the
+     * signature when it is fixed.
+     *
+     * @return Signature of the request.
+     */
+    public String getSignature() {
+        return AUTO_TIMEZONE.equals(timezone) ? fieldQuery : fieldQuery + "&timezone=" + timezone;
+    }
+
+    /**
+     * Builds the query parameters of this request, appended to the coordinates of the forecast URL.
+     *
+     * @param requestTimezone Time zone to send, e.g. from timezoneFor.
+     * @return Query string starting with &.
+     */
+    public String toQuery(String requestTimezone) {
+        return fieldQuery + "&timezone=" + URLEncoder.encode(requestTimezone, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds the query parameters of this request with its own time zone.
+     *
+     * @return Query string starting with &.
+     */
+    public String toQuery() {
+        return toQuery(timezone);
+    }
+
+    /**
+     * Builds the query parameters of the fields, window and units. Parameters at their API default are left out.
+     *
+     * @return Query string starting with &, or empty.
+     */
+    private String buildFieldQuery() {
+        StringBuilder query = new StringBuilder();
+
+        if (!hourlyFields.isEmpty()) {
+            StringJoiner names = new StringJoiner(",");
+            for (HourlyField field : hourlyFields) {
+                names.add(field.getApiName());
+            }
+            query.append("&hourly=").append(names);
+        }
+        if (!dailyFields.isEmpty()) {
+            StringJoiner names = new StringJoiner(",");
+            for (DailyField field : dailyFields) {
+                names.add(field.getApiName());
+            }
+            query.append("&daily=").append(names);
+        }
+
+        query.append("&forecast_days=").append(forecastDays);
+        if (forecastHours > 0) {
+            query.append("&forecast_hours=").append(forecastHours);
+        }
+        if (temperatureUnit != TemperatureUnit.CELSIUS) {
+            query.append("&temperature_unit=").append(temperatureUnit.getApiName());
+        }
+        if (windspeedUnit != WindspeedUnit.KMH) {
+            query.append("&windspeed_unit=").append(windspeedUnit.getApiName());
+        }
+        return query.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ForecastRequest && getSignature().equals(((ForecastRequest) other).getSignature());
+    }
+
+    @Override
+    public int hashCode() {
+        return getSignature().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ForecastRequest[" + toQuery() + "]";
+    }
+
+    /**
+     * Builder of forecast requests. Every setter returns the builder, so calls can be chained.
+     */
+    public static final class Builder {
+        private EnumSet<HourlyField> hourlyFields = EnumSet.allOf(HourlyField.class);
+        private EnumSet<DailyField> dailyFields = EnumSet.allOf(DailyField.class);
+        private int forecastDays = 7;
+        private int forecastHours;
+        private TemperatureUnit temperatureUnit = TemperatureUnit.CELSIUS;
+        private WindspeedUnit windspeedUnit = WindspeedUnit.KMH;
+        private String timezone = AUTO_TIMEZONE;
+
+        private Builder() {
+        }
+
+        /**
+         * Asks for exactly the given hourly fields, replacing the previous selection.
+         *
+         * @param fields The fields, none to skip the hourly series.
+         * @return This builder.
+         */
+        public Builder hourly(HourlyField... fields) {
+            hourlyFields = EnumSet.noneOf(HourlyField.class);
+            Collections.addAll(hourlyFields, fields);
+            return this;
+        }
+
+        /**
+         * Asks for exactly the given daily fields, replacing the previous selection.
+         *
+         * @param fields The fields, none to skip the daily series.
+         * @return This builder.
+         */
+        public Builder daily(DailyField... fields) {
+            dailyFields = EnumSet.noneOf(DailyField.class);
+            Collections.addAll(dailyFields, fields);
+            return this;
+        }
+
+        /**
+         * @param days Number of days starting today, 1 to MAX_FORECAST_DAYS.
+         * @return This builder.
+         * @throws IllegalArgumentException If the number of days is out of range.
+         */
+        public Builder forecastDays(int days) {
+            if (days < 1 || days > MAX_FORECAST_DAYS) {
+                throw new IllegalArgumentException("forecast days must be between 1 and " + MAX_FORECAST_DAYS + ": " + days);
+            }
+            forecastDays = days;
+            return this;
+        }
+
+        /**
+         * Limits the hourly series to a number of hours starting at the current hour.
+         *
+         * @param hours Number of hours, or 0 for every hour of the forecast days.
+         * @return This builder.
+         * @throws IllegalArgumentException If the number of hours is out of range.
+         */
+        public Builder forecastHours(int hours) {
+            if (hours < 0 || hours > MAX_FORECAST_DAYS * 24) {
+                throw new IllegalArgumentException("forecast hours must be between 0 and " + MAX_FORECAST_DAYS * 24 + ": " + hours);
+            }
+            forecastHours = hours;
+            return this;
+        }
+
+        /**
+         * @param unit Unit of the temperatures.
+         * @return This builder.
+         */
+        public Builder temperatureUnit(TemperatureUnit unit) {
+            temperatureUnit = unit;
+            return this;
+        }
+
+        /**
+         * @param unit Unit of the wind speeds.
+         * @return This builder.
+         */
+        public Builder windspeedUnit(WindspeedUnit unit) {
+            windspeedUnit = unit;
+            return this;
+        }
+
+        /**
+         * @param zone IANA time zone of the series, e.g. America/New_York, or AUTO_TIMEZONE for the location's own.
+         * @return This builder.
+         */
+        public Builder timezone(String zone) {
+            timezone = zone == null || zone.isBlank() ? AUTO_TIMEZONE : zone;
+            return this;
+        }
+
+        /**
+         * @return The request.
+         */
+        public ForecastRequest build() {
+            return new ForecastRequest(this);
+        }
+    }
+}
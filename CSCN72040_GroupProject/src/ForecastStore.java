@@ -0,0 +1,383 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Persistent store of the last downloaded forecast per location and forecast request, used when the network
+ * is unavailable. Records are matched on the request signature as well, so a forecast downloaded with other fields,
+ * units or time window is never served in place of the requested one.
+ * The file holds a fixed number of fixed-width binary records and is memory-mapped, so reopening it is instant
+ * and reading a record touches only its own pages. When all slots are used the oldest record is replaced.
+ * Records are written in place without coordination between processes, so the file is locked while the store is open
+ * and a second process cannot open the same file.
+ *
+ * Record layout: key length (short), key (UTF-8, KEY_BYTES), signature length (short),
+ * request signature (UTF-8, SIGNATURE_BYTES), fetch time (long), latitude and longitude (double),
+ * UTC offset (int), hour and day counts (short), then the hourly series (epoch hours, temperature, humidity,
+ * weather code, wind speed) padded to MAX_HOURS and the daily series (UV index, sunrise, sunset) padded to MAX_DAYS.
+ */
+public class ForecastStore {
+
+    private static final int MAGIC = 0x57465332; // "WFS2"
+    private static final int HEADER_BYTES = 16;
+
+    private static final int KEY_BYTES = 64;
+    private static final int SIGNATURE_BYTES = 256;
+    private static final int MAX_HOURS = 384;
+    private static final int MAX_DAYS = 16;
+
+    // Offsets of the fields within a record
+    private static final int KEY_LENGTH = 0;
+    private static final int KEY = KEY_LENGTH + 2;
+    private static final int SIGNATURE_LENGTH = KEY + KEY_BYTES;
+    private static final int SIGNATURE = SIGNATURE_LENGTH + 2;
+    private static final int FETCHED_AT = SIGNATURE + SIGNATURE_BYTES;
+    private static final int LATITUDE = FETCHED_AT + 8;
+    private static final int LONGITUDE = LATITUDE + 8;
+    private static final int UTC_OFFSET = LONGITUDE + 8;
+    private static final int HOUR_COUNT = UTC_OFFSET + 4;
+    private static final int DAY_COUNT = HOUR_COUNT + 2;
+    private static final int EPOCH_HOURS = DAY_COUNT + 2;
+    private static final int TEMPERATURE = EPOCH_HOURS + 4 * MAX_HOURS;
+    private static final int WINDSPEED = TEMPERATURE + 8 * MAX_HOURS;
+    private static final int HUMIDITY = WINDSPEED + 8 * MAX_HOURS;
+    private static final int WEATHER_CODE = HUMIDITY + 2 * MAX_HOURS;
+    private static final int UV_INDEX = WEATHER_CODE + MAX_HOURS;
+    private static final int SUNRISE = UV_INDEX + 8 * MAX_DAYS;
+    private static final int SUNSET = SUNRISE + 4 * MAX_DAYS;
+    private static final int RECORD_BYTES = SUNSET + 4 * MAX_DAYS;
+
+    // Files opened by stores of this process. Closing any channel of a file releases all of the process's locks on it,
+    // so a second store on the same file must be refused before it opens a channel
+    private static final Set<Path> OPEN_FILES = new HashSet<>();
+
+    private final int slots;
+    private final MappedByteBuffer buffer;
+
+    // Kept open for the life of the store, as closing it would release the lock
+    private final FileChannel channel;
+
+    /**
+     * Opens or creates a store and locks its file for this process. A file with a different layout is reinitialized.
+     *
+     * @param file  File holding the store.
+     * @param slots Number of locations the store can hold.
+     * @throws FileSystemException If the file is locked by another store, in this or another process.
+     * @throws IOException         If the file cannot be opened or mapped.
+     */
+    public ForecastStore(Path file, int slots) throws IOException {
+        this.slots = slots;
+
+        long size = HEADER_BYTES + (long) slots * RECORD_BYTES;
+        Path openFile = file.toAbsolutePath().normalize();
+        synchronized (OPEN_FILES) {
+            if (!OPEN_FILES.add(openFile)) {
+                throw new FileSystemException(file.toString(), null, "in use by another store");
+            }
+        }
+
+        FileChannel openChannel = null;
+        try {
+            openChannel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            // Lock before looking at the header, so a file in use is never reinitialized
+            if (openChannel.tryLock() == null) {
+                throw new FileSystemException(file.toString(), null, "in use by another process");
+            }
+
+            boolean fresh = openChannel.size() != size;
+            buffer = openChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            channel = openChannel;
+
+            if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != RECORD_BYTES || buffer.getInt(8) != slots) {
+                // Wipe the records and write the header of the current layout
+                for (long i = 0; i < size; i++) {
+                    buffer.put((int) i, (byte) 0);
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, RECORD_BYTES);
+                buffer.putInt(8, slots);
+            }
+        } catch (IOException e) {
+            if (openChannel != null) {
+                openChannel.close();
+            }
+            synchronized (OPEN_FILES) {
+                OPEN_FILES.remove(openFile);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the store configured by system properties:
+     * weather.offlineStore.file (default forecast-store.dat, empty disables the store)
+     * and weather.offlineStore.slots (default 128).
+     * If another process already uses the file, this process runs without an offline store.
+     *
+     * @return ForecastStore for this process, or null if disabled or the file cannot be opened.
+     */
+    public static ForecastStore fromSystemProperties() {
+        String fileName = System.getProperty("weather.offlineStore.file", "forecast-store.dat");
+        if (fileName.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return new ForecastStore(Paths.get(fileName), Integer.getInteger("weather.offlineStore.slots", 128));
+        } catch (FileSystemException e) {
+            // Typically a second instance of the app on the same file, which works on without the store
+            System.out.println("Offline store disabled: " + e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Stores the forecast of a location, replacing its previous record for the same request or the oldest one.
+     * Hours and days beyond the record capacity are dropped, and forecasts of requests whose signature exceeds
+     * the record capacity are not stored.
+     *
+     * @param key      Normalized location name.
+     * @param request  Request the forecast was downloaded with.
+     * @param forecast The forecast.
+     */
+    public synchronized void put(String key, ForecastRequest request, WeatherSnapshot forecast) {
+        byte[] keyBytes = encodeKey(key);
+        byte[] signatureBytes = request.getSignature().getBytes(StandardCharsets.UTF_8);
+        if (signatureBytes.length > SIGNATURE_BYTES) {
+            return;
+        }
+
+        int slot = findSlot(keyBytes, signatureBytes);
+        if (slot < 0) {
+            slot = freeOrOldestSlot();
+        } else if (buffer.getLong(offset(slot) + FETCHED_AT) == forecast.getFetchedAtMillis()) {
+            // Already stored, e.g. served from the forecast cache
+            return;
+        }
+
+        int record = offset(slot);
+        int hours = Math.min(forecast.getHourCount(), MAX_HOURS);
+        int days = Math.min(forecast.getDayCount(), MAX_DAYS);
+
+        buffer.putShort(record + KEY_LENGTH, (short) 0);
+        buffer.put(record + KEY, keyBytes);
+        buffer.putShort(record + SIGNATURE_LENGTH, (short) signatureBytes.length);
+        buffer.put(record + SIGNATURE, signatureBytes);
+        buffer.putLong(record + FETCHED_AT, forecast.getFetchedAtMillis());
+        buffer.putDouble(record + LATITUDE, forecast.getLatitude());
+        buffer.putDouble(record + LONGITUDE, forecast.getLongitude());
+        buffer.putInt(record + UTC_OFFSET, forecast.getUtcOffsetSeconds());
+        buffer.putShort(record + HOUR_COUNT, (short) hours);
+        buffer.putShort(record + DAY_COUNT, (short) days);
+
+        for (int i = 0; i < hours; i++) {
+            buffer.putInt(record + EPOCH_HOURS + 4 * i, forecast.getEpochHour(i));
+            buffer.putDouble(record + TEMPERATURE + 8 * i, forecast.getTemperature(i));
+            buffer.putDouble(record + WINDSPEED + 8 * i, forecast.getWindspeed(i));
+            buffer.putShort(record + HUMIDITY + 2 * i, (short) forecast.getHumidity(i));
+            buffer.put(record + WEATHER_CODE + i, (byte) forecast.getWeatherCode(i));
+        }
+        for (int i = 0; i < days; i++) {
+            buffer.putDouble(record + UV_INDEX + 8 * i, forecast.getUvIndexMax(i));
+            buffer.putInt(record + SUNRISE + 4 * i, forecast.getSunriseEpochMinute(i));
+            buffer.putInt(record + SUNSET + 4 * i, forecast.getSunsetEpochMinute(i));
+        }
+
+        // Writing the key length last marks the record as complete
+        buffer.putShort(record + KEY_LENGTH, (short) keyBytes.length);
+    }
+
+    /**
+     * Reads the last forecast stored for a location and request.
+     *
+     * @param key     Normalized location name.
+     * @param request Request the forecast must have been downloaded with.
+     * @return Stale forecast, or null if the location was never stored with this request.
+     */
+    public synchronized WeatherSnapshot get(String key, ForecastRequest request) {
+        int slot = findSlot(encodeKey(key), request.getSignature().getBytes(StandardCharsets.UTF_8));
+        return slot < 0 ? null : read(offset(slot));
+    }
+
+    /**
+     * Reads the most recent forecast stored for a request within the grid cell of the given coordinates.
+     *
+     * @param latitude  Latitude of the location.
+     * @param longitude Longitude of the location.
+     * @param request   Request the forecast must have been downloaded with.
+     * @return Stale forecast, or null if no location in the grid cell was stored with this request.
+     */
+    public synchronized WeatherSnapshot get(double latitude, double longitude, ForecastRequest request) {
+        String cellKey = ForecastCache.cellKey(latitude, longitude);
+        byte[] signatureBytes = request.getSignature().getBytes(StandardCharsets.UTF_8);
+
+        int newest = -1;
+        for (int slot = 0; slot < slots; slot++) {
+            int record = offset(slot);
+            if (buffer.getShort(record + KEY_LENGTH) == 0 || !hasSignature(record, signatureBytes)) {
+                continue;
+            }
+
+            String recordCell = ForecastCache.cellKey(buffer.getDouble(record + LATITUDE), buffer.getDouble(record + LONGITUDE));
+            if (recordCell.equals(cellKey)
+                    && (newest < 0 || buffer.getLong(record + FETCHED_AT) > buffer.getLong(offset(newest) + FETCHED_AT))) {
+                newest = slot;
+            }
+        }
+        return newest < 0 ? null : read(offset(newest));
+    }
+
+    /**
+     * Finds the location whose forecast for a request was downloaded most recently, to show at startup.
+     *
+     * @param request Request the forecast must have been downloaded with.
+     * @return Normalized location name of the newest record, or null if no record has this request.
+     */
+    public synchronized String getLatestKey(ForecastRequest request) {
+        byte[] signatureBytes = request.getSignature().getBytes(StandardCharsets.UTF_8);
+
+        int newest = -1;
+        for (int slot = 0; slot < slots; slot++) {
+            int record = offset(slot);
+            if (buffer.getShort(record + KEY_LENGTH) != 0 && hasSignature(record, signatureBytes)
+                    && (newest < 0 || buffer.getLong(record + FETCHED_AT) > buffer.getLong(offset(newest) + FETCHED_AT))) {
+                newest = slot;
+            }
+        }
+
+        return newest < 0 ? null : readKey(offset(newest));
+    }
+
+    /**
+     * Decodes a record into a stale snapshot.
+     *
+     * @param record Offset of the record in the file.
+     * @return The stored forecast.
+     */
+    private WeatherSnapshot read(int record) {
+        int hours = buffer.getShort(record + HOUR_COUNT);
+        int days = buffer.getShort(record + DAY_COUNT);
+
+        int[] epochHours = new int[hours];
+        double[] temperature = new double[hours];
+        double[] windspeed = new double[hours];
+        short[] humidity = new short[hours];
+        byte[] weatherCode = new byte[hours];
+        buffer.slice(record + EPOCH_HOURS, 4 * hours).asIntBuffer().get(epochHours);
+        buffer.slice(record + TEMPERATURE, 8 * hours).asDoubleBuffer().get(temperature);
+        buffer.slice(record + WINDSPEED, 8 * hours).asDoubleBuffer().get(windspeed);
+        buffer.slice(record + HUMIDITY, 2 * hours).asShortBuffer().get(humidity);
+        buffer.get(record + WEATHER_CODE, weatherCode);
+
+        double[] uvIndex = new double[days];
+        int[] sunrise = new int[days];
+        int[] sunset = new int[days];
+        buffer.slice(record + UV_INDEX, 8 * days).asDoubleBuffer().get(uvIndex);
+        buffer.slice(record + SUNRISE, 4 * days).asIntBuffer().get(sunrise);
+        buffer.slice(record + SUNSET, 4 * days).asIntBuffer().get(sunset);
+
+        return new WeatherSnapshot(buffer.getDouble(record + LATITUDE), buffer.getDouble(record + LONGITUDE),
+                buffer.getInt(record + UTC_OFFSET), buffer.getLong(record + FETCHED_AT),
+                epochHours, temperature, humidity, weatherCode, windspeed, uvIndex, sunrise, sunset).asStale();
+    }
+
+    /**
+     * Reads the key of a record.
+     *
+     * @param record Offset of the record in the file.
+     * @return The normalized location name.
+     */
+    private String readKey(int record) {
+        byte[] keyBytes = new byte[buffer.getShort(record + KEY_LENGTH)];
+        buffer.get(record + KEY, keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the slot holding a key stored with a request.
+     *
+     * @param keyBytes       Encoded key.
+     * @param signatureBytes Encoded request signature.
+     * @return The slot, or -1 if the key is not stored with this request.
+     */
+    private int findSlot(byte[] keyBytes, byte[] signatureBytes) {
+        for (int slot = 0; slot < slots; slot++) {
+            int record = offset(slot);
+            if (buffer.getShort(record + KEY_LENGTH) == keyBytes.length
+                    && buffer.slice(record + KEY, keyBytes.length).equals(ByteBuffer.wrap(keyBytes))
+                    && hasSignature(record, signatureBytes)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a record was downloaded with a request.
+     *
+     * @param record         Offset of the record in the file.
+     * @param signatureBytes Encoded request signature.
+     * @return True if the record's signature equals the given one.
+     */
+    private boolean hasSignature(int record, byte[] signatureBytes) {
+        return buffer.getShort(record + SIGNATURE_LENGTH) == signatureBytes.length
+                && buffer.slice(record + SIGNATURE, signatureBytes.length).equals(ByteBuffer.wrap(signatureBytes));
+    }
+
+    /**
+     * Finds an empty slot, or the slot with the oldest forecast if the store is full.
+     *
+     * @return The slot to write to.
+     */
+    private int freeOrOldestSlot() {
+        int oldest = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            int record = offset(slot);
+            if (buffer.getShort(record + KEY_LENGTH) == 0) {
+                return slot;
+            }
+            if (buffer.getLong(record + FETCHED_AT) < buffer.getLong(offset(oldest) + FETCHED_AT)) {
+                oldest = slot;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Computes the offset of a slot's record in the file.
+     *
+     * @param slot The slot.
+     * @return Offset of the record.
+     */
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+    /**
+     * Encodes a key, truncating it to the record's key capacity.
+     *
+     * @param key The key.
+     * @return Encoded key.
+     */
+    private static byte[] encodeKey(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > KEY_BYTES) {
+            byte[] truncated = new byte[KEY_BYTES];
+            System.arraycopy(keyBytes, 0, truncated, 0, KEY_BYTES);
+            return truncated;
+        }
+        return keyBytes;
+    }
+}
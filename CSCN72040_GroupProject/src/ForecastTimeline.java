@@ -0,0 +1,373 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Scrollable timeline of the hourly or daily forecast, painted from the series of an already downloaded
+ * WeatherSnapshot. Each hour or day is a column with its time, condition icon and temperature, connected by
+ * a temperature curve. All column values are computed once when a forecast is set, and painting is limited
+ * to the columns inside the clip, so scrolling repaints only the few columns that come into view.
+ * Meant to be placed in a JScrollPane.
+ */
+public class ForecastTimeline extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Columns shown by the timeline.
+     */
+    public enum Mode {
+        HOURLY, DAILY
+    }
+
+    private static final int HOUR_WIDTH = 56;
+    private static final int DAY_WIDTH = 84;
+    private static final int HEIGHT = 150;
+    private static final int ICON_SIZE = 28;
+
+    // Vertical layout of a column: label, icon, temperature text, then the temperature curve
+    private static final int LABEL_Y = 18;
+    private static final int ICON_Y = 26;
+    private static final int TEMPERATURE_Y = 74;
+    private static final int CURVE_TOP = 86;
+    private static final int CURVE_BOTTOM = HEIGHT - 12;
+
+    private static final Color GRID = new Color(0, 0, 0, 30);
+    private static final Color CURVE = new Color(230, 126, 34);
+    private static final Color LOW_CURVE = new Color(52, 152, 219);
+
+    private final Font labelFont = new Font("Dialog", Font.PLAIN, 13);
+    private final Font temperatureFont = new Font("Dialog", Font.BOLD, 14);
+
+    private WeatherSnapshot forecast;
+    private Mode mode = Mode.HOURLY;
+
+    // Values of every column, computed when the forecast or mode changes
+    private int columns;
+    private String[] labels = new String[0];
+    private WeatherIcon[] icons = new WeatherIcon[0];
+    private double[] highs = new double[0];
+    private double[] lows = new double[0];
+    private double minTemperature;
+    private double maxTemperature;
+
+    /**
+     * Creates an empty timeline.
+     */
+    public ForecastTimeline() {
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setForeground(Color.DARK_GRAY);
+        setDoubleBuffered(true);
+    }
+
+    /**
+     * Shows a forecast, starting at its current hour or day.
+     *
+     * @param forecast The forecast, or null to clear the timeline.
+     */
+    public void setForecast(WeatherSnapshot forecast) {
+        if (forecast == this.forecast) {
+            return;
+        }
+
+        this.forecast = forecast;
+        rebuild();
+    }
+
+    /**
+     * Switches between hourly and daily columns.
+     *
+     * @param mode The columns to show.
+     */
+    public void setMode(Mode mode) {
+        if (mode == this.mode) {
+            return;
+        }
+
+        this.mode = mode;
+        rebuild();
+    }
+
+    /**
+     * @return The columns shown.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Recomputes the column values and resizes the timeline to fit them.
+     */
+    private void rebuild() {
+        if (forecast == null || forecast.getHourCount() == 0) {
+            columns = 0;
+        } else if (mode == Mode.HOURLY) {
+            buildHourlyColumns();
+        } else {
+            buildDailyColumns();
+        }
+
+        minTemperature = Double.POSITIVE_INFINITY;
+        maxTemperature = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < columns; i++) {
+            // Missing values are NaN and must not reach the scale
+            if (!Double.isNaN(lows[i])) {
+                minTemperature = Math.min(minTemperature, lows[i]);
+            }
+            if (!Double.isNaN(highs[i])) {
+                maxTemperature = Math.max(maxTemperature, highs[i]);
+            }
+        }
+
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Fills one column per hour, from the current hour to the end of the forecast.
+     */
+    private void buildHourlyColumns() {
+        int first = forecast.getCurrentHourIndex();
+        columns = forecast.getHourCount() - first;
+        allocateColumns();
+
+        for (int i = 0; i < columns; i++) {
+            int hour = first + i;
+            int hourOfDay = Math.floorMod(forecast.getEpochHour(hour), 24);
+
+            labels[i] = i == 0 ? "Now" : String.format("%02d:00", hourOfDay);
+            icons[i] = forecast.getCondition(hour).getIcon();
+            highs[i] = forecast.getTemperature(hour);
+            lows[i] = highs[i];
+        }
+    }
+
+    /**
+     * Fills one column per day with the day's highest and lowest temperature and its worst condition,
+     * from today to the end of the forecast.
+     */
+    private void buildDailyColumns() {
+        long lastDay = Math.floorDiv(forecast.getEpochHour(forecast.getHourCount() - 1), 24);
+        long today = Math.floorDiv(forecast.getEpochHour(forecast.getCurrentHourIndex()), 24);
+
+        columns = (int) (lastDay - today + 1);
+        allocateColumns();
+
+        WeatherCondition[] worstConditions = new WeatherCondition[columns];
+        Arrays.fill(highs, Double.NaN);
+        Arrays.fill(lows, Double.NaN);
+        Arrays.fill(worstConditions, WeatherCondition.UNKNOWN);
+
+        for (int hour = 0; hour < forecast.getHourCount(); hour++) {
+            int column = (int) (Math.floorDiv(forecast.getEpochHour(hour), 24) - today);
+            if (column < 0) {
+                continue;
+            }
+
+            double temperature = forecast.getTemperature(hour);
+            if (!Double.isNaN(temperature)) {
+                highs[column] = Double.isNaN(highs[column]) ? temperature : Math.max(highs[column], temperature);
+                lows[column] = Double.isNaN(lows[column]) ? temperature : Math.min(lows[column], temperature);
+            }
+            worstConditions[column] = worstConditions[column].worse(forecast.getCondition(hour));
+        }
+
+        for (int i = 0; i < columns; i++) {
+            LocalDate date = LocalDate.ofEpochDay(today + i);
+            labels[i] = i == 0 ? "Today" : date.getDayOfWeek().getDisplayName(TextStyle.SHORT, Locale.getDefault());
+            icons[i] = worstConditions[i].getIcon();
+        }
+    }
+
+    /**
+     * Allocates the column arrays for the current column count.
+     */
+    private void allocateColumns() {
+        labels = new String[columns];
+        icons = new WeatherIcon[columns];
+        highs = new double[columns];
+        lows = new double[columns];
+    }
+
+    /**
+     * @return Width of one column in the current mode.
+     */
+    private int columnWidth() {
+        return mode == Mode.HOURLY ? HOUR_WIDTH : DAY_WIDTH;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(columns * columnWidth(), HEIGHT);
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics.create();
+        try {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            if (columns == 0) {
+                return;
+            }
+
+            // Only the columns intersecting the clip, plus one on each side so the curve continues past the edge
+            int width = columnWidth();
+            int first = Math.max(0, clip.x / width - 1);
+            int last = Math.min(columns - 1, (clip.x + clip.width) / width + 1);
+
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+            for (int i = first; i <= last; i++) {
+                paintColumn(g, i, i * width, width);
+            }
+
+            paintCurve(g, highs, CURVE, first, last, width);
+            if (mode == Mode.DAILY) {
+                paintCurve(g, lows, LOW_CURVE, first, last, width);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Paints the label, icon and temperature text of a column.
+     *
+     * @param g     Graphics to paint with.
+     * @param index Index of the column.
+     * @param x     Left edge of the column.
+     * @param width Width of the column.
+     */
+    private void paintColumn(Graphics2D g, int index, int x, int width) {
+        g.setColor(GRID);
+        g.drawLine(x + width - 1, 4, x + width - 1, HEIGHT - 4);
+
+        g.setColor(getForeground());
+        g.setFont(labelFont);
+        drawCentered(g, labels[index], x, width, LABEL_Y);
+
+        if (icons[index] != null) {
+            ImageIcon icon = IconRegistry.get(icons[index], ICON_SIZE, ICON_SIZE);
+            if (icon != null) {
+                icon.paintIcon(this, g, x + (width - icon.getIconWidth()) / 2, ICON_Y + (ICON_SIZE + 8 - icon.getIconHeight()) / 2);
+            }
+        }
+
+        g.setFont(temperatureFont);
+        String temperature = mode == Mode.HOURLY
+                ? formatTemperature(highs[index])
+                : formatTemperature(highs[index]) + " / " + formatTemperature(lows[index]);
+        drawCentered(g, temperature, x, width, TEMPERATURE_Y);
+    }
+
+    /**
+     * Paints a temperature curve through the centres of the given columns.
+     *
+     * @param g            Graphics to paint with.
+     * @param temperatures Temperature of every column.
+     * @param color        Color of the curve.
+     * @param first        First column to connect.
+     * @param last         Last column to connect.
+     * @param width        Width of a column.
+     */
+    private void paintCurve(Graphics2D g, double[] temperatures, Color color, int first, int last, int width) {
+        Path2D.Double curve = new Path2D.Double();
+        boolean drawing = false;
+        for (int i = first; i <= last; i++) {
+            if (Double.isNaN(temperatures[i])) {
+                drawing = false;
+                continue;
+            }
+
+            double x = i * width + width / 2.0;
+            double y = curveY(temperatures[i]);
+            if (drawing) {
+                curve.lineTo(x, y);
+            } else {
+                curve.moveTo(x, y);
+                drawing = true;
+            }
+        }
+
+        g.setColor(color);
+        g.setStroke(new BasicStroke(2f));
+        g.draw(curve);
+    }
+
+    /**
+     * @param temperature Temperature in degrees Celsius.
+     * @return Vertical position of the temperature on the curve.
+     */
+    private double curveY(double temperature) {
+        double range = maxTemperature - minTemperature;
+        double share = range <= 0 ? 0.5 : (temperature - minTemperature) / range;
+        return CURVE_BOTTOM - share * (CURVE_BOTTOM - CURVE_TOP);
+    }
+
+    /**
+     * @param temperature Temperature in degrees Celsius.
+     * @return Rounded temperature with unit, or a dash if it is missing.
+     */
+    private static String formatTemperature(double temperature) {
+        return Double.isNaN(temperature) ? "-" : Math.round(temperature) + "\u00b0";
+    }
+
+    /**
+     * Draws text horizontally centred in a column.
+     *
+     * @param g     Graphics to paint with.
+     * @param text  The text.
+     * @param x     Left edge of the column.
+     * @param width Width of the column.
+     * @param y     Baseline of the text.
+     */
+    private static void drawCentered(Graphics2D g, String text, int x, int width, int y) {
+        FontMetrics metrics = g.getFontMetrics();
+        g.drawString(text, x + (width - metrics.stringWidth(text)) / 2, y);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(7 * HOUR_WIDTH, HEIGHT);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? columnWidth() : 10;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        if (orientation != SwingConstants.HORIZONTAL) {
+            return visibleRect.height;
+        }
+
+        // Scroll by whole columns, keeping one column of the previous page in view
+        int width = columnWidth();
+        return Math.max(width, (visibleRect.width / width - 1) * width);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        // Stretch to the viewport when all columns fit, e.g. the daily view
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return true;
+    }
+}
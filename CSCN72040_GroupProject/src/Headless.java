@@ -0,0 +1,240 @@
+import org.json.simple.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the weather engine without a GUI.
+ * Reads a list of locations, fetches their weather on a fixed interval through DataManagement
+ * and writes one JSON line per location and fetch, followed by a throughput and latency summary.
+ */
+public class Headless {
+
+    private final List<String> locations;
+    private final long intervalMillis;
+    private final int iterations;
+    private final PrintWriter output;
+
+    // Only the current hour is written, so only the current hour and today are downloaded
+    private final ForecastRequest request;
+
+    // Duration of every completed refresh cycle, in nanoseconds
+    private final List<Long> cycleNanos = new ArrayList<>();
+    private long fetched;
+    private long stale;
+    private long failed;
+    private long startNanos;
+
+    /**
+     * Creates a headless runner.
+     *
+     * @param locations      Names of the locations to fetch.
+     * @param intervalMillis Time between the start of two refresh cycles.
+     * @param iterations     Number of refresh cycles, or 0 to run until the process is stopped.
+     * @param output         Writer receiving the NDJSON records.
+     * @param request        Fields and units to download, e.g. ForecastRequest.CURRENT.
+     */
+    public Headless(List<String> locations, long intervalMillis, int iterations, PrintWriter output,
+                    ForecastRequest request) {
+        this.locations = locations;
+        this.intervalMillis = intervalMillis;
+        this.iterations = iterations;
+        this.output = output;
+        this.request = request;
+    }
+
+    /**
+     * Parses the command line and runs the headless mode.
+     * Options: --locations FILE (required, one location per line, # starts a comment),
+     * --interval SECONDS (default 0), --iterations N (default 1, or 0 = forever when an interval is given),
+     * --output FILE (default standard output, records are appended),
+     * --temperature-unit celsius|fahrenheit (default celsius) and --windspeed-unit kmh|ms|mph|kn (default kmh).
+     *
+     * @param args Command-line arguments following --headless.
+     */
+    public static void main(String[] args) {
+        String locationsFile = null;
+        String outputFile = null;
+        long intervalSeconds = 0;
+        Integer iterations = null;
+        ForecastRequest.Builder request = ForecastRequest.CURRENT.toBuilder();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--locations":
+                        locationsFile = args[++i];
+                        break;
+                    case "--interval":
+                        intervalSeconds = Long.parseLong(args[++i]);
+                        break;
+                    case "--iterations":
+                        iterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--output":
+                        outputFile = args[++i];
+                        break;
+                    case "--temperature-unit":
+                        request.temperatureUnit(ForecastRequest.TemperatureUnit.fromApiName(args[++i]));
+                        break;
+                    case "--windspeed-unit":
+                        request.windspeedUnit(ForecastRequest.WindspeedUnit.fromApiName(args[++i]));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (locationsFile == null) {
+                throw new IllegalArgumentException("Missing --locations");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: --headless --locations FILE [--interval SECONDS] [--iterations N] [--output FILE]"
+                    + " [--temperature-unit celsius|fahrenheit] [--windspeed-unit kmh|ms|mph|kn]");
+            System.exit(2);
+            return;
+        }
+
+        try {
+            List<String> locations = readLocations(Paths.get(locationsFile));
+            PrintWriter output = outputFile == null
+                    ? new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)))
+                    : new PrintWriter(Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+
+            int cycles = iterations != null ? iterations : (intervalSeconds > 0 ? 0 : 1);
+            new Headless(locations, intervalSeconds * 1000L, cycles, output, request.build()).run();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the location list, skipping blank lines and # comments.
+     *
+     * @param file File with one location name per line.
+     * @return The location names.
+     * @throws IOException If the file cannot be read.
+     */
+    private static List<String> readLocations(Path file) throws IOException {
+        List<String> locations = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String location = line.trim();
+            if (!location.isEmpty() && !location.startsWith("#")) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Runs the refresh cycles, then writes the summary to standard error.
+     * When running forever the summary is written when the process is stopped.
+     */
+    public void run() {
+        startNanos = System.nanoTime();
+
+        Thread summaryHook = new Thread(this::printSummary, "weather-headless-summary");
+        Runtime.getRuntime().addShutdownHook(summaryHook);
+
+        try {
+            for (int cycle = 0; iterations == 0 || cycle < iterations; cycle++) {
+                long cycleStart = System.nanoTime();
+                refresh();
+
+                // Wait for the next cycle, unless this was the last one
+                long elapsedMillis = (System.nanoTime() - cycleStart) / 1_000_000L;
+                if ((iterations == 0 || cycle + 1 < iterations) && elapsedMillis < intervalMillis) {
+                    Thread.sleep(intervalMillis - elapsedMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Runtime.getRuntime().removeShutdownHook(summaryHook);
+        printSummary();
+    }
+
+    /**
+     * Fetches every location once and writes a record per location.
+     */
+    private void refresh() {
+        long cycleStart = System.nanoTime();
+        Map<String, WeatherSnapshot> weatherData = RequestScheduler.callWithPriority(
+                RequestScheduler.Priority.BACKGROUND, () -> DataManagement.getWeatherData(locations, request));
+        long cycleDuration = System.nanoTime() - cycleStart;
+
+        String polledAt = Instant.now().toString();
+        synchronized (this) {
+            cycleNanos.add(cycleDuration);
+
+            for (String location : locations) {
+                WeatherSnapshot forecast = weatherData.get(location);
+
+                JSONObject record = forecast != null ? DataManagement.getCurrentWeather(forecast, request) : new JSONObject();
+                record.put("location", location);
+                record.put("polled_at", polledAt);
+                if (forecast == null) {
+                    record.put("error", "Could not retrieve weather data");
+                    failed++;
+                } else if (forecast.isStale()) {
+                    // Last known forecast from the offline store, its age is in data_as_of
+                    stale++;
+                } else {
+                    fetched++;
+                }
+
+                output.println(record.toJSONString());
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Writes the number of fetches, the throughput and the cycle latency percentiles to standard error.
+     */
+    private synchronized void printSummary() {
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        long[] sorted = new long[cycleNanos.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = cycleNanos.get(i);
+        }
+        Arrays.sort(sorted);
+
+        System.err.printf("Cycles: %d, locations fetched: %d, stale: %d, failed: %d, elapsed: %.1f s%n",
+                sorted.length, fetched, stale, failed, elapsedSeconds);
+        System.err.printf("Throughput: %.1f locations/s%n", elapsedSeconds > 0 ? fetched / elapsedSeconds : 0.0);
+        if (sorted.length > 0) {
+            System.err.printf("Cycle latency ms: min %.1f, p50 %.1f, p95 %.1f, max %.1f%n",
+                    sorted[0] / 1e6, percentile(sorted, 50) / 1e6, percentile(sorted, 95) / 1e6,
+                    sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Reads a percentile from sorted values using the nearest rank method.
+     *
+     * @param sorted     Values in ascending order, not empty.
+     * @param percentile Percentile between 0 and 100.
+     * @return The value at the percentile.
+     */
+    private static long percentile(long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared HTTP transport for the weather APIs.
+ * A single HttpClient keeps connections alive between requests (using HTTP/2 where the server supports it),
+ * asks for gzip compressed bodies, enforces a connect deadline and a deadline for the whole response, body included,
+ * and retries transient failures
+ * with exponential backoff. Every attempt first takes a slot from the RequestScheduler, so requests are
+ * paced per host. Timeouts and retries are counted in the WeatherMetrics.
+ */
+public class HttpTransport {
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final RequestScheduler scheduler;
+    private final WeatherMetrics metrics;
+
+    /**
+     * Creates a transport.
+     *
+     * @param connectTimeout       Maximum time to establish a connection.
+     * @param requestTimeout       Maximum time to wait for the complete response of a request, headers and body.
+     * @param maxRetries           Number of times a failed request is retried.
+     * @param initialBackoffMillis Delay before the first retry, doubled for every following retry.
+     * @param scheduler            Rate limiter every request attempt waits for.
+     * @param metrics              Metrics counting timeouts and retries.
+     */
+    public HttpTransport(Duration connectTimeout, Duration requestTimeout, int maxRetries, long initialBackoffMillis,
+                         RequestScheduler scheduler, WeatherMetrics metrics) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates a transport configured from system properties:
+     * weather.http.connectTimeoutMillis (default 5000), weather.http.requestTimeoutMillis (default 10000),
+     * weather.http.maxRetries (default 2) and weather.http.backoffMillis (default 200),
+     * with a RequestScheduler configured from system properties as well.
+     *
+     * @param metrics Metrics counting timeouts, retries and shed requests.
+     * @return HttpTransport configured for this process.
+     */
+    public static HttpTransport fromSystemProperties(WeatherMetrics metrics) {
+        return new HttpTransport(
+                Duration.ofMillis(Long.getLong("weather.http.connectTimeoutMillis", 5000L)),
+                Duration.ofMillis(Long.getLong("weather.http.requestTimeoutMillis", 10000L)),
+                Integer.getInteger("weather.http.maxRetries", 2),
+                Long.getLong("weather.http.backoffMillis", 200L),
+                RequestScheduler.fromSystemProperties(metrics),
+                metrics);
+    }
+
+    /**
+     * Sends a GET request and returns the response body.
+     * Connection failures, timeouts, 429 and 5xx responses are retried; other error statuses fail immediately.
+     * A 429 response also pauses all requests to the host for its Retry-After time.
+     *
+     * @param urlString The URL to request.
+     * @return Decompressed response body, already downloaded in full, which the caller must close.
+     * @throws IOException If the request still fails after all retries, the status is not 200
+     *                     or the rate limiter sheds the request.
+     */
+    public InputStream get(String urlString) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(urlString))
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+
+        IOException lastFailure = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                metrics.recordRetry();
+                backoff(attempt);
+            }
+
+            // Wait for a slot of the host's rate limit, or give up if none comes in time
+            scheduler.acquire(request.uri().getHost());
+
+            // The request timeout only covers the wait for the headers, so the whole exchange gets its own deadline
+            // and a server stalling in the middle of the body can't hold the thread forever
+            CompletableFuture<HttpResponse<byte[]>> exchange =
+                    client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+            HttpResponse<byte[]> response;
+            try {
+                response = exchange.get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                exchange.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Request interrupted: " + urlString);
+            } catch (TimeoutException e) {
+                // Cancelling aborts the exchange and releases its connection
+                exchange.cancel(true);
+                metrics.recordTimeout();
+                lastFailure = new HttpTimeoutException("Response not complete after " + requestTimeout.toMillis()
+                        + " ms: " + urlString);
+                continue;
+            } catch (ExecutionException e) {
+                // Connection refused, reset or timed out, worth another try
+                Throwable cause = e.getCause();
+                if (cause instanceof HttpTimeoutException) {
+                    metrics.recordTimeout();
+                }
+                lastFailure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                continue;
+            }
+
+            int status = response.statusCode();
+            if (status == 200) {
+                return decode(response);
+            }
+
+            // Over the fair-use limit, hold back every request to this host as long as the server asks
+            if (status == 429) {
+                scheduler.pause(request.uri().getHost(), retryAfterMillis(response, attempt + 1));
+            }
+
+            lastFailure = new IOException("HTTP " + status + " from " + urlString);
+            if (status != 429 && status < 500) {
+                throw lastFailure;
+            }
+        }
+
+        throw lastFailure;
+    }
+
+    /**
+     * Wraps the response body in a decompressing stream if the server gzip encoded it.
+     *
+     * @param response Successful response.
+     * @return Stream of the decoded body.
+     * @throws IOException If the gzip header cannot be read.
+     */
+    private static InputStream decode(HttpResponse<byte[]> response) throws IOException {
+        InputStream body = new ByteArrayInputStream(response.body());
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip")) {
+            return new GZIPInputStream(body, 8192);
+        }
+        return body;
+    }
+
+    /**
+     * Reads how long the server asks clients to wait after a 429 response.
+     *
+     * @param response    The 429 response.
+     * @param nextAttempt Number of the next attempt, for the backoff used when the server gives no time.
+     * @return Milliseconds to wait.
+     */
+    private long retryAfterMillis(HttpResponse<?> response, int nextAttempt) {
+        String retryAfter = response.headers().firstValue("Retry-After").orElse("");
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000L;
+        } catch (NumberFormatException e) {
+            // Absent, or an HTTP date, which Open-Meteo doesn't send
+            return initialBackoffMillis << (nextAttempt - 1);
+        }
+    }
+
+    /**
+     * Waits before a retry, doubling the delay for every attempt and adding jitter so clients don't retry in step.
+     *
+     * @param attempt Number of the upcoming attempt, starting at 1 for the first retry.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    private void backoff(int attempt) throws InterruptedIOException {
+        long delay = initialBackoffMillis << (attempt - 1);
+        delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes every bundled image once and keeps the resulting icons in memory.
+ * Loading starts in parallel on background threads as soon as this class is first used,
+ * so searches never read or decode image files on the event dispatch thread.
+ */
+public final class IconRegistry {
+
+    // Decoded icons, each completed by a background load started at class initialization
+    private static final Map<WeatherIcon, CompletableFuture<ImageIcon>> ICONS = new EnumMap<>(WeatherIcon.class);
+
+    // Icons scaled down to fit a component, keyed by icon and bounds
+    private static final Map<String, ImageIcon> SCALED_ICONS = new ConcurrentHashMap<>();
+
+    static {
+        for (WeatherIcon icon : WeatherIcon.values()) {
+            ICONS.put(icon, CompletableFuture.supplyAsync(() -> load(icon)));
+        }
+    }
+
+    private IconRegistry() {
+    }
+
+    /**
+     * Starts loading all icons in the background, if not already started.
+     * Call early at startup so the icons are decoded while the GUI is being built.
+     */
+    public static void preload() {
+        // Loading is started by the static initializer
+    }
+
+    /**
+     * Returns an icon, waiting for its background load if it is still running.
+     *
+     * @param icon The icon.
+     * @return The decoded icon, or null if it could not be loaded.
+     */
+    public static ImageIcon get(WeatherIcon icon) {
+        return ICONS.get(icon).join();
+    }
+
+    /**
+     * Returns an icon scaled down, keeping its aspect ratio, to fit within the given bounds.
+     * Icons that already fit are returned unscaled. Scaled icons are cached.
+     *
+     * @param icon      The icon.
+     * @param maxWidth  Width of the component the icon is shown in.
+     * @param maxHeight Height of the component the icon is shown in.
+     * @return The fitted icon, or null if it could not be loaded.
+     */
+    public static ImageIcon get(WeatherIcon icon, int maxWidth, int maxHeight) {
+        ImageIcon original = get(icon);
+        if (original == null
+                || (original.getIconWidth() <= maxWidth && original.getIconHeight() <= maxHeight)) {
+            return original;
+        }
+
+        return SCALED_ICONS.computeIfAbsent(icon + "@" + maxWidth + "x" + maxHeight,
+                key -> scale(original, maxWidth, maxHeight));
+    }
+
+    /**
+     * Reads an image from the classpath, falling back to the source folder when running from an IDE
+     * that does not copy the assets.
+     *
+     * @param icon The icon to load.
+     * @return ImageIcon created from the image, or null if an error occurs.
+     */
+    private static ImageIcon load(WeatherIcon icon) {
+        try (InputStream in = IconRegistry.class.getResourceAsStream("/assets/" + icon.getFileName())) {
+            BufferedImage image = in != null
+                    ? ImageIO.read(in)
+                    : ImageIO.read(new File("src/assets/" + icon.getFileName()));
+            if (image != null) {
+                return new ImageIcon(image);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        System.out.println("Could not find resource " + icon.getFileName());
+        return null;
+    }
+
+    /**
+     * Scales an icon to fit within the given bounds.
+     *
+     * @param original  Icon to scale.
+     * @param maxWidth  Maximum width.
+     * @param maxHeight Maximum height.
+     * @return The scaled icon.
+     */
+    private static ImageIcon scale(ImageIcon original, int maxWidth, int maxHeight) {
+        double factor = Math.min((double) maxWidth / original.getIconWidth(),
+                (double) maxHeight / original.getIconHeight());
+        int width = Math.max(1, (int) Math.round(original.getIconWidth() * factor));
+        int height = Math.max(1, (int) Math.round(original.getIconHeight() * factor));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(original.getImage(), 0, 0, width, height, null);
+        g.dispose();
+
+        return new ImageIcon(scaled);
+    }
+}
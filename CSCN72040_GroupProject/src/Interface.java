@@ -1,13 +1,13 @@
-import org.json.simple.JSONObject;
-
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.json.simple.JSONObject;
 import java.awt.Window.Type;
 /**
  * This class creates the main user interface for the Weather Application.
@@ -15,37 +15,83 @@ import java.awt.Window.Type;
  * and handles the actions to retrieve and display weather data.
  */
 public class Interface extends JFrame {
-	// Field to store weather data in JSON format
-	private JSONObject weatherData;
+    // Forecast fields, window and units the window shows: current values, today and the 7 day timeline
+    private static final ForecastRequest FORECAST_REQUEST = ForecastRequest.DEFAULT;
+
+	// Field to store the forecast of the last searched location
+	private WeatherSnapshot weatherData;
+
+    // Search currently in flight, cancelled when the user starts a new one
+    private CompletableFuture<WeatherSnapshot> pendingSearch;
+
+    // Components updated whenever new weather data arrives
+    private JTextField searchTextField;
+    private JButton searchButton;
+    private JLabel weatherConditionImage;
+    private JLabel temperatureText;
+    private JLabel weatherConditionDesc;
+    private JLabel humidityText;
+    private JLabel uvIndexText;
+    private JLabel sunriseText;
+    private JLabel sunsetText;
+    private JLabel windspeedText;
+    private JButton favouriteButton;
+    private JComboBox<String> favouritesBox;
+    private ForecastTimeline timeline;
+    private LocationAutocomplete autocomplete;
+
+    // Favourite locations, kept fresh in the background so switching to them never waits for the network
+    private final FavouritesRefresher favourites = FavouritesRefresher.fromSystemProperties();
+
+    // Location whose weather is displayed, and the condition its icon shows
+    private String currentLocation;
+    private WeatherCondition displayedCondition;
 	 /**
      * Constructor that initializes the WeatherAppGui frame and its components.
      */
     public Interface(){
     	// Set the title of the JFrame
         super("SkyCast");
-        setResizable(false);
 
         // Ensure the application exits when the JFrame is closed
 
         setDefaultCloseOperation(EXIT_ON_CLOSE);
 
-        // Set the initial size of the JFrame
-        setSize(649, 764);
-
-        // Position the JFrame in the center of the screen
-        setLocationRelativeTo(null);
-
         // Disable the use of a layout manager to allow absolute positioning of components
         getContentPane().setLayout(null);
         // Add the GUI components to the JFrame
         addGuiComponents();
+
+        // Show the absolutely positioned components in a scroll pane, so the window can be resized below
+        // the size of the layout (e.g. on a low screen) without cutting off the timeline at the bottom
+        Container content = getContentPane();
+        content.setPreferredSize(new Dimension(633, 918));
+        JScrollPane contentScrollPane = new JScrollPane(content);
+        contentScrollPane.setBorder(BorderFactory.createEmptyBorder());
+        contentScrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        setContentPane(contentScrollPane);
+
+        // Set the initial size of the JFrame to fit the layout, but no taller than the usable screen area
+        pack();
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        if (getHeight() > screen.height) {
+            // leave room for the vertical scroll bar next to the content
+            setSize(getWidth() + contentScrollPane.getVerticalScrollBar().getPreferredSize().width, screen.height);
+        }
+
+        // Position the JFrame in the center of the screen
+        setLocationRelativeTo(null);
+
+        // Push refreshed favourites to the GUI and start refreshing them
+        favourites.addListener((location, forecast) -> SwingUtilities.invokeLater(() -> showRefreshedWeather(location, forecast)));
+        favourites.start();
     }
     /**
      * This method adds all necessary GUI components to the frame.
      */
     private void addGuiComponents(){
         // search field
-        JTextField searchTextField = new JTextField();
+        searchTextField = new JTextField();
 
         // set the location and size of our component
         searchTextField.setBounds(85, 18, 351, 45);
@@ -56,12 +102,12 @@ public class Interface extends JFrame {
         getContentPane().add(searchTextField);
 
         // Label for displaying the weather condition image
-        JLabel weatherConditionImage = new JLabel(loadImage("src/assets/cloudy.png"));
+        weatherConditionImage = new JLabel(IconRegistry.get(WeatherIcon.CLOUDY, 337, 156));
         weatherConditionImage.setBounds(154, 74, 337, 156);
         getContentPane().add(weatherConditionImage);
 
         // Label for displaying the temperature
-        JLabel temperatureText = new JLabel("10 C");
+        temperatureText = new JLabel("10 C");
         temperatureText.setBounds(95, 228, 450, 54);
         temperatureText.setFont(new Font("Dialog", Font.BOLD, 45));
 
@@ -70,52 +116,52 @@ public class Interface extends JFrame {
         getContentPane().add(temperatureText);
 
         // Label for displaying the weather condition description
-        JLabel weatherConditionDesc = new JLabel("Cloudy");
+        weatherConditionDesc = new JLabel("Cloudy");
         weatherConditionDesc.setBounds(105, 293, 450, 45);
         weatherConditionDesc.setFont(new Font("Dialog", Font.PLAIN, 30));
         weatherConditionDesc.setHorizontalAlignment(SwingConstants.CENTER);
         getContentPane().add(weatherConditionDesc);
         
         // Label for displaying the humidity icon
-        JLabel humidityImage = new JLabel(loadImage("src/assets/humidity.png"));
+        JLabel humidityImage = new JLabel(IconRegistry.get(WeatherIcon.HUMIDITY));
         humidityImage.setBounds(63, 360, 74, 66);
         getContentPane().add(humidityImage);
         
 
      // Label for displaying the humidity value
-        JLabel humidityText = new JLabel("<html><b>Humidity</b> 100%</html>");
+        humidityText = new JLabel("<html><b>Humidity</b> 100%</html>");
         humidityText.setBounds(48, 414, 177, 75);
         humidityText.setFont(new Font("Dialog", Font.PLAIN, 16));
         getContentPane().add(humidityText);
         
         // Label for displaying the UV index
-        JLabel uvIndexText = new JLabel("<html><b>UV Index</b> 0</html>");
+        uvIndexText = new JLabel("<html><b>UV Index</b> 0</html>");
         uvIndexText.setBounds(495, 424, 138, 55);
         uvIndexText.setFont(new Font("Dialog", Font.PLAIN, 16));
         getContentPane().add(uvIndexText);
         
-        JLabel uvIndexImage = new JLabel(loadImage("src/assets/uv-index.png"));
+        JLabel uvIndexImage = new JLabel(IconRegistry.get(WeatherIcon.UV_INDEX));
         uvIndexImage.setBounds(495, 360, 74, 66);
         getContentPane().add(uvIndexImage);
         
         // Label for displaying sunrise icon
-        JLabel sunriseImage = new JLabel(loadImage("src/assets/sunrise.png"));
+        JLabel sunriseImage = new JLabel(IconRegistry.get(WeatherIcon.SUNRISE));
         sunriseImage.setBounds(181, 512, 74, 66);
         getContentPane().add(sunriseImage);
 
         // Label for displaying the sunrise time
-        JLabel sunriseText = new JLabel("<html><b>Sunrise</b> 06:00 AM</html>");
+        sunriseText = new JLabel("<html><b>Sunrise</b> 06:00 AM</html>");
         sunriseText.setBounds(153, 577, 161, 55);
         sunriseText.setFont(new Font("Dialog", Font.PLAIN, 16));
         getContentPane().add(sunriseText);
 
         // Label for displaying sunset icon
-        JLabel sunsetImage = new JLabel(loadImage("src/assets/sunset.png"));
+        JLabel sunsetImage = new JLabel(IconRegistry.get(WeatherIcon.SUNSET));
         sunsetImage.setBounds(443, 512, 74, 66);
         getContentPane().add(sunsetImage);
 
         // Label for displaying the sunset time
-        JLabel sunsetText = new JLabel("<html><b>Sunset</b> 06:00 PM</html>");
+        sunsetText = new JLabel("<html><b>Sunset</b> 06:00 PM</html>");
         sunsetText.setBounds(413, 577, 170, 55);
         sunsetText.setFont(new Font("Dialog", Font.PLAIN, 16));
         getContentPane().add(sunsetText);
@@ -124,18 +170,18 @@ public class Interface extends JFrame {
     
 
         // Label for displaying the wind speed icon
-        JLabel windspeedImage = new JLabel(loadImage("src/assets/windspeed.png"));
+        JLabel windspeedImage = new JLabel(IconRegistry.get(WeatherIcon.WINDSPEED));
         windspeedImage.setBounds(281, 360, 74, 66);
         getContentPane().add(windspeedImage);
         
         // Label for displaying the wind speed value
-        JLabel windspeedText = new JLabel("<html><b>Windspeed</b> 15km/h</html>");
+        windspeedText = new JLabel("<html><b>Windspeed</b> 15km/h</html>");
         windspeedText.setBounds(251, 424, 185, 55);
         windspeedText.setFont(new Font("Dialog", Font.PLAIN, 16));
         getContentPane().add(windspeedText);
 
         // Button that initiates a search for weather data
-        JButton searchButton = new JButton(loadImage("src/assets/search.png"));
+        searchButton = new JButton(IconRegistry.get(WeatherIcon.SEARCH));
 
         // change the cursor to a hand cursor when hovering over this button
         searchButton.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
@@ -150,87 +196,300 @@ public class Interface extends JFrame {
                 if(userInput.replaceAll("\\s", "").length() <= 0){
                     return;
                 }
+                autocomplete.dismiss();
 
-             // Assuming WeatherApp.getWeatherData is a method that fetches weather data for the specified location
-                weatherData = DataManagement.getWeatherData(userInput);
-
-                // update gui*********************************
-              
-                String weatherCondition = (String) weatherData.get("weather_condition");
-
-                // depending on the condition, we will update the weather image that corresponds with the condition
-                switch(weatherCondition){
-                    case "Clear":
-                        weatherConditionImage.setIcon(loadImage("src/assets/clear.png"));
-                        break;
-                    case "Cloudy":
-                        weatherConditionImage.setIcon(loadImage("src/assets/cloudy.png"));
-                        break;
-                    case "Rain":
-                        weatherConditionImage.setIcon(loadImage("src/assets/rain.png"));
-                        break;
-                    case "Snow":
-                        weatherConditionImage.setIcon(loadImage("src/assets/snow.png"));
-                        break;
+                searchWeather(userInput);
+            }
+        });
+
+        // suggestions while typing, picking one searches exactly that location
+        autocomplete = new LocationAutocomplete(searchTextField, 250, this::searchWeather);
+
+        // pressing enter in the search field picks the highlighted suggestion, or behaves like clicking the search button
+        searchTextField.addActionListener(e -> {
+            if(!autocomplete.selectHighlighted()){
+                searchButton.doClick();
+            }
+        });
+        getContentPane().add(searchButton);
+
+        // Button that adds the displayed location to the favourites, or removes it
+        favouriteButton = new JButton("\u2606");
+        favouriteButton.setFont(new Font("Dialog", Font.PLAIN, 24));
+        favouriteButton.setToolTipText("Add to favourites");
+        favouriteButton.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        favouriteButton.setBounds(456, 18, 47, 45);
+        favouriteButton.addActionListener(e -> toggleFavourite());
+        getContentPane().add(favouriteButton);
+
+        // List of favourites, selecting one shows its (already refreshed) weather
+        favouritesBox = new JComboBox<>();
+        favouritesBox.setFont(new Font("Dialog", Font.PLAIN, 16));
+        favouritesBox.setBounds(85, 650, 485, 35);
+        updateFavouritesBox();
+        favouritesBox.addActionListener(e -> {
+            if(favouritesBox.getSelectedIndex() <= 0){
+                return;
+            }
+
+            String location = (String) favouritesBox.getSelectedItem();
+            favouritesBox.setSelectedIndex(0);
+            autocomplete.setText(location);
+            searchWeather(location);
+        });
+        getContentPane().add(favouritesBox);
+
+        // Hourly and daily forecast of the displayed location, drawn from the already downloaded series
+        timeline = new ForecastTimeline();
+        JScrollPane timelineScrollPane = new JScrollPane(timeline,
+                ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER, ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        timelineScrollPane.setBounds(20, 740, 595, 168);
+        // blit the visible part when scrolling instead of repainting the whole viewport
+        timelineScrollPane.getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+        getContentPane().add(timelineScrollPane);
+
+        // Buttons switching the timeline between hours and days
+        JToggleButton hourlyButton = new JToggleButton("Hourly", true);
+        hourlyButton.setBounds(20, 703, 100, 30);
+        hourlyButton.addActionListener(e -> timeline.setMode(ForecastTimeline.Mode.HOURLY));
+        getContentPane().add(hourlyButton);
+
+        JToggleButton dailyButton = new JToggleButton("7 days");
+        dailyButton.setBounds(125, 703, 100, 30);
+        dailyButton.addActionListener(e -> timeline.setMode(ForecastTimeline.Mode.DAILY));
+        getContentPane().add(dailyButton);
+
+        ButtonGroup timelineModes = new ButtonGroup();
+        timelineModes.add(hourlyButton);
+        timelineModes.add(dailyButton);
+
+        // show the last known weather right away, without waiting for the network
+        showLastKnownWeather();
+        
+
+    }
+
+    /**
+     * Loads the most recently downloaded forecast from the offline store in the background
+     * and displays it, unless the user started a search in the meantime.
+     */
+    private void showLastKnownWeather(){
+        CompletableFuture.supplyAsync(() -> DataManagement.getLastKnownLocation(FORECAST_REQUEST)).thenAccept(location -> {
+            WeatherSnapshot forecast = location == null ? null : DataManagement.getLastKnownWeather(location, FORECAST_REQUEST);
+            if(forecast == null){
+                return;
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                // a search result takes precedence over the last known data
+                if(weatherData != null || pendingSearch != null){
+                    return;
                 }
 
-                // update temperature text
-                double temperature = (double) weatherData.get("temperature");
-                temperatureText.setText(temperature + " C");
+                currentLocation = location.replace('+', ' ');
+                autocomplete.setText(currentLocation);
+                weatherData = forecast;
+                updateWeatherDisplay();
+            });
+        });
+    }
 
-                // update weather condition text
-                weatherConditionDesc.setText(weatherCondition);
+    /**
+     * Starts an asynchronous search for the given location, cancelling any search still in flight.
+     * The GUI shows a loading state until the result is delivered back on the event dispatch thread.
+     *
+     * @param location Location entered by the user.
+     */
+    private void searchWeather(String location){
+        startSearch(location.trim(), () -> DataManagement.getWeatherDataAsync(location, FORECAST_REQUEST));
+    }
 
-                // update humidity text
-                long humidity = (long) weatherData.get("humidity");
-                humidityText.setText("<html><b>Humidity</b> " + humidity + "%</html>");
+    /**
+     * Starts an asynchronous search for a location picked from the suggestions, skipping geocoding
+     * so the picked place is shown even when other places share its name.
+     *
+     * @param location Location returned by the geocoding API.
+     */
+    private void searchWeather(JSONObject location){
+        startSearch(String.valueOf(location.get("name")), () -> DataManagement.getWeatherDataAsync(location, FORECAST_REQUEST));
+    }
 
+    /**
+     * Cancels any search still in flight, shows the loading state and starts a new search.
+     * The result is delivered back on the event dispatch thread.
+     *
+     * @param locationName Name of the searched location.
+     * @param fetch        Starts the fetch of the forecast.
+     */
+    private void startSearch(String locationName, Supplier<CompletableFuture<WeatherSnapshot>> fetch){
+        // a newer search makes the previous one stale
+        if(pendingSearch != null){
+            pendingSearch.cancel(true);
+        }
 
-                // update uvindex text
-                double uvIndex = (double) weatherData.get("uv_index");
-                uvIndexText.setText("<html><b>UV Index</b> " + uvIndex + "</html>");
-                
-                // update sunrise text
-                String sunriseTime = (String) weatherData.get("sunrise");
-                sunriseText.setText("<html><b>Sunrise</b> " + sunriseTime + "</html>");
+        // show loading state while the request is running
+        weatherConditionDesc.setText("Loading...");
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
-                // update sunset text
-                String sunsetTime = (String) weatherData.get("sunset");
-                sunsetText.setText("<html><b>Sunset</b> " + sunsetTime + "</html>");
+        CompletableFuture<WeatherSnapshot> search = fetch.get();
+        pendingSearch = search;
+        currentLocation = locationName;
+        updateFavouriteButton();
 
-                
-                // update windspeed text
-                double windspeed = (double) weatherData.get("windspeed");
-                windspeedText.setText("<html><b>Windspeed</b> " + windspeed + "km/h</html>");
-                
-                
+        search.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            // ignore results of searches that were superseded or cancelled
+            if(search != pendingSearch || search.isCancelled()){
+                return;
             }
-        });
-        getContentPane().add(searchButton);
-        
+            pendingSearch = null;
+            setCursor(Cursor.getDefaultCursor());
+
+            if(error != null || result == null){
+                weatherConditionDesc.setText("Not found");
+                return;
+            }
+
+            weatherData = result;
+            updateWeatherDisplay();
+        }));
+    }
+
+    /**
+     * Displays a forecast refreshed in the background if it belongs to the displayed location.
+     *
+     * @param location Name of the refreshed location.
+     * @param forecast The refreshed forecast.
+     */
+    private void showRefreshedWeather(String location, WeatherSnapshot forecast){
+        if(currentLocation == null || pendingSearch != null
+                || !LocationCache.normalize(location).equals(LocationCache.normalize(currentLocation))){
+            return;
+        }
+
+        weatherData = forecast;
+        updateWeatherDisplay();
+    }
+
+    /**
+     * Adds the displayed location to the favourites, or removes it if it already is one.
+     */
+    private void toggleFavourite(){
+        if(currentLocation == null || currentLocation.isEmpty()){
+            return;
+        }
+
+        if(favourites.contains(currentLocation)){
+            favourites.remove(currentLocation);
+        }else{
+            favourites.add(currentLocation);
+        }
+
+        updateFavouriteButton();
+        updateFavouritesBox();
+    }
+
+    /**
+     * Shows whether the displayed location is a favourite on the favourite button.
+     */
+    private void updateFavouriteButton(){
+        boolean favourite = currentLocation != null && favourites.contains(currentLocation);
+        favouriteButton.setText(favourite ? "\u2605" : "\u2606");
+        favouriteButton.setToolTipText(favourite ? "Remove from favourites" : "Add to favourites");
+    }
 
+    /**
+     * Fills the favourites list, keeping a placeholder as the first item.
+     */
+    private void updateFavouritesBox(){
+        favouritesBox.removeAllItems();
+        favouritesBox.addItem("Favourites");
+        for(String location : favourites.getFavourites()){
+            favouritesBox.addItem(location);
+        }
+    }
+
+    /**
+     * Changes the text of a label only if it differs, so refreshes with unchanged values don't repaint.
+     *
+     * @param label The label.
+     * @param text  The new text.
+     */
+    private static void setTextIfChanged(JLabel label, String text){
+        if(!text.equals(label.getText())){
+            label.setText(text);
+        }
     }
 
     /**
-     * Helper method to load an image from the filesystem and create an ImageIcon.
+     * Formats a forecast value for a label.
      *
-     * @param resourcePath Path to the image resource.
-     * @return ImageIcon object created from the image at the given path, or null if an error occurs.
+     * @param value The value, NaN if the forecast has none.
+     * @return The value, or a dash if it is missing.
+     */
+    private static String formatValue(double value){
+        return Double.isNaN(value) ? "-" : String.valueOf(value);
+    }
+
+    /**
+     * Updates the GUI components with the values in the current weather data.
+     * Must be called on the event dispatch thread.
      */
-    private ImageIcon loadImage(String resourcePath){
-        try{
-            // read the image file from the path given
-            BufferedImage image = ImageIO.read(new File(resourcePath));
-
-            // returns an image icon so that our component can render it
-            return new ImageIcon(image);
-        }catch(IOException e){
-            e.printStackTrace();
-            
+    private void updateWeatherDisplay(){
+        // tell the user when the network was unavailable and the values are the last known ones
+        if(weatherData.isStale()){
+            String fetchedAt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+                    .format(Instant.ofEpochMilli(weatherData.getFetchedAtMillis()).atZone(ZoneId.systemDefault()));
+            setTitle("SkyCast (offline, data as of " + fetchedAt + ")");
+        }else{
+            setTitle("SkyCast");
+        }
+
+        // values are shown for the current hour and today, a forecast without hourly or daily series shows dashes
+        boolean hasHours = weatherData.getHourCount() > 0;
+        boolean hasDays = weatherData.getDayCount() > 0;
+        int hour = hasHours ? weatherData.getCurrentHourIndex() : -1;
+        int day = 0;
+
+        WeatherCondition weatherCondition = hasHours ? weatherData.getCondition(hour) : WeatherCondition.UNKNOWN;
+
+        // depending on the condition, we will update the weather image that corresponds with the condition
+        if(weatherCondition.getIcon() != (displayedCondition == null ? null : displayedCondition.getIcon())){
+            weatherConditionImage.setIcon(IconRegistry.get(weatherCondition.getIcon(),
+                    weatherConditionImage.getWidth(), weatherConditionImage.getHeight()));
         }
+        displayedCondition = weatherCondition;
+
+        // update temperature text
+        double temperature = hasHours ? weatherData.getTemperature(hour) : Double.NaN;
+        setTextIfChanged(temperatureText, formatValue(temperature) + " " + FORECAST_REQUEST.getTemperatureUnit().getSymbol());
+
+        // update weather condition text
+        setTextIfChanged(weatherConditionDesc, weatherCondition.getLabel());
+
+        // update humidity text
+        int humidity = hasHours ? weatherData.getHumidity(hour) : WeatherSnapshot.MISSING_HUMIDITY;
+        String humidityValue = humidity == WeatherSnapshot.MISSING_HUMIDITY ? "-" : humidity + "%";
+        setTextIfChanged(humidityText, "<html><b>Humidity</b> " + humidityValue + "</html>");
+
+        // update uvindex text
+        double uvIndex = hasDays ? weatherData.getUvIndexMax(day) : Double.NaN;
+        setTextIfChanged(uvIndexText, "<html><b>UV Index</b> " + formatValue(uvIndex) + "</html>");
+
+        // update sunrise text
+        String sunriseTime = hasDays ? weatherData.getSunrise(day) : null;
+        setTextIfChanged(sunriseText, "<html><b>Sunrise</b> " + (sunriseTime == null ? "-" : sunriseTime) + "</html>");
+
+        // update sunset text
+        String sunsetTime = hasDays ? weatherData.getSunset(day) : null;
+        setTextIfChanged(sunsetText, "<html><b>Sunset</b> " + (sunsetTime == null ? "-" : sunsetTime) + "</html>");
+
+        // update windspeed text
+        double windspeed = hasHours ? weatherData.getWindspeed(hour) : Double.NaN;
+        setTextIfChanged(windspeedText, "<html><b>Windspeed</b> " + formatValue(windspeed)
+                + FORECAST_REQUEST.getWindspeedUnit().getSymbol() + "</html>");
 
-        System.out.println("Could not find resource");
-        return null;
+        // update the timeline with the rest of the forecast
+        timeline.setForecast(weatherData);
     }
 }
 
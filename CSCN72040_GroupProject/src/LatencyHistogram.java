@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with a fixed memory footprint, in the style of HdrHistogram.
+ * Latencies are counted in microsecond buckets whose width grows with the value (32 buckets per power of two),
+ * so any percentile is reported within about 3% of the exact value while recording stays a single
+ * atomic increment, cheap enough for every request.
+ */
+public class LatencyHistogram {
+
+    // Buckets per power of two; values below this get one bucket per microsecond
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 5;
+
+    // Largest value tracked exactly, about 19 hours; longer latencies land in the last bucket
+    private static final long MAX_MICROS = (1L << 36) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketIndex(MAX_MICROS) + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.min(Math.max(nanos / 1000L, 0L), MAX_MICROS);
+
+        counts.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        totalMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    /**
+     * @return Number of recorded latencies.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return Mean of the recorded latencies in milliseconds, or 0 if none were recorded.
+     */
+    public double getMeanMillis() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0.0 : totalMicros.sum() / 1000.0 / recorded;
+    }
+
+    /**
+     * @return Highest recorded latency in milliseconds.
+     */
+    public double getMaxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * Reads a percentile of the recorded latencies.
+     *
+     * @param percentile Percentile between 0 and 100.
+     * @return Upper bound of the bucket holding the percentile in milliseconds, or 0 if nothing was recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Clears all recorded latencies.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        totalMicros.reset();
+        maxMicros.set(0);
+    }
+
+    /**
+     * Finds the bucket of a value: one bucket per value below SUB_BUCKETS,
+     * above that the value's top SUB_BUCKET_BITS + 1 bits select the bucket within its power of two.
+     *
+     * @param micros The value in microseconds.
+     * @return Index of the bucket.
+     */
+    private static int bucketIndex(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (micros >>> shift);
+    }
+
+    /**
+     * @param index Index of a bucket.
+     * @return Highest value in microseconds counted in the bucket.
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index - (long) shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,276 @@
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Search-as-you-type suggestions for a location text field.
+ * Suggestions are looked up on every keystroke in DataManagement's index of previously geocoded names,
+ * which takes no network call. When the index has too few matches, the typed text is geocoded in the
+ * background once the user pauses typing; a newer keystroke cancels that request, so at most one geocoding
+ * call per pause is sent.
+ */
+public class LocationAutocomplete {
+
+    // Number of suggestions shown at most
+    private static final int MAX_SUGGESTIONS = 8;
+
+    // Shortest text sent to the geocoding API, shorter prefixes match too many places to be useful
+    private static final int MIN_REMOTE_LENGTH = 3;
+
+    private final JTextField textField;
+    private final Consumer<JSONObject> onSelect;
+
+    private final DefaultListModel<JSONObject> suggestions = new DefaultListModel<>();
+    private final JList<JSONObject> suggestionList = new JList<>(suggestions);
+    private final JPopupMenu popup = new JPopupMenu();
+
+    // Fires once the user stopped typing for the debounce delay
+    private final Timer debounceTimer;
+
+    // Geocoding request for the typed text, cancelled when the text changes
+    private CompletableFuture<JSONArray> pendingLookup;
+
+    // Set while the text is changed by a selection, so it doesn't trigger new suggestions
+    private boolean adjusting;
+
+    /**
+     * Attaches suggestions to a text field.
+     *
+     * @param textField     The location text field.
+     * @param debounceMillis Typing pause after which missing suggestions are geocoded.
+     * @param onSelect      Called on the event dispatch thread with the location the user picked.
+     */
+    public LocationAutocomplete(JTextField textField, int debounceMillis, Consumer<JSONObject> onSelect) {
+        this.textField = textField;
+        this.onSelect = onSelect;
+
+        debounceTimer = new Timer(debounceMillis, e -> lookupRemote());
+        debounceTimer.setRepeats(false);
+
+        suggestionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        suggestionList.setFont(textField.getFont().deriveFont(Font.PLAIN, 16f));
+        suggestionList.setFocusable(false);
+        suggestionList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, describe((JSONObject) value), index,
+                        isSelected, cellHasFocus);
+            }
+        });
+        suggestionList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = suggestionList.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    select(suggestions.get(index));
+                }
+            }
+        });
+
+        // The popup must not take the focus from the text field, the user keeps typing while it is shown
+        popup.setFocusable(false);
+        popup.add(new JScrollPane(suggestionList));
+
+        textField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                textChanged();
+            }
+        });
+        textField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                handleKey(e);
+            }
+        });
+    }
+
+    /**
+     * Formats a location for the suggestion list, e.g. "Toronto, Ontario, Canada".
+     *
+     * @param location A location returned by getLocationData.
+     * @return Name of the location with its region and country.
+     */
+    public static String describe(JSONObject location) {
+        StringBuilder description = new StringBuilder(String.valueOf(location.get("name")));
+        for (String field : new String[]{"admin1", "country"}) {
+            Object value = location.get(field);
+            if (value != null && !value.toString().isEmpty()) {
+                description.append(", ").append(value);
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Picks the highlighted suggestion, e.g. when the user presses enter.
+     *
+     * @return True if a suggestion was highlighted and picked, false if the popup had no selection.
+     */
+    public boolean selectHighlighted() {
+        JSONObject location = popup.isVisible() ? suggestionList.getSelectedValue() : null;
+        if (location == null) {
+            return false;
+        }
+
+        select(location);
+        return true;
+    }
+
+    /**
+     * Replaces the text of the field without suggesting or looking up locations for it,
+     * e.g. when the application shows the name of the location it displays.
+     *
+     * @param text The new text.
+     */
+    public void setText(String text) {
+        dismiss();
+
+        adjusting = true;
+        try {
+            textField.setText(text);
+        } finally {
+            adjusting = false;
+        }
+    }
+
+    /**
+     * Hides the suggestions and stops looking up the typed text.
+     */
+    public void dismiss() {
+        debounceTimer.stop();
+        cancelLookup();
+        popup.setVisible(false);
+    }
+
+    /**
+     * Shows the indexed suggestions for the new text right away and restarts the debounce delay.
+     */
+    private void textChanged() {
+        if (adjusting) {
+            return;
+        }
+
+        cancelLookup();
+        showSuggestions();
+        debounceTimer.restart();
+    }
+
+    /**
+     * Geocodes the typed text in the background if the index did not already fill the suggestion list.
+     */
+    private void lookupRemote() {
+        String text = textField.getText().trim();
+        if (text.length() < MIN_REMOTE_LENGTH || suggestions.size() >= MAX_SUGGESTIONS) {
+            return;
+        }
+
+        // The results are added to the index, so they are picked up from there
+        CompletableFuture<JSONArray> lookup = DataManagement.lookupSuggestionsAsync(text);
+        pendingLookup = lookup;
+        lookup.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (lookup != pendingLookup || lookup.isCancelled()) {
+                return;
+            }
+            pendingLookup = null;
+            showSuggestions();
+        }));
+    }
+
+    /**
+     * Fills the popup with the indexed locations matching the typed text, hiding it if there are none.
+     */
+    private void showSuggestions() {
+        List<JSONObject> matches = DataManagement.suggestLocations(textField.getText(), MAX_SUGGESTIONS);
+
+        suggestions.clear();
+        for (JSONObject location : matches) {
+            suggestions.addElement(location);
+        }
+
+        if (matches.isEmpty() || !textField.isShowing()) {
+            popup.setVisible(false);
+            return;
+        }
+
+        suggestionList.setVisibleRowCount(matches.size());
+        popup.setPopupSize(textField.getWidth(), popup.getPreferredSize().height);
+        if (!popup.isVisible()) {
+            popup.show(textField, 0, textField.getHeight());
+        } else {
+            popup.pack();
+        }
+    }
+
+    /**
+     * Moves through the suggestions with the arrow keys and hides them with escape.
+     *
+     * @param e The key event of the text field.
+     */
+    private void handleKey(KeyEvent e) {
+        if (!popup.isVisible()) {
+            return;
+        }
+
+        int index = suggestionList.getSelectedIndex();
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_DOWN:
+                suggestionList.setSelectedIndex(Math.min(index + 1, suggestions.size() - 1));
+                e.consume();
+                break;
+            case KeyEvent.VK_UP:
+                suggestionList.setSelectedIndex(Math.max(index - 1, 0));
+                e.consume();
+                break;
+            case KeyEvent.VK_ESCAPE:
+                dismiss();
+                e.consume();
+                break;
+            default:
+                break;
+        }
+        suggestionList.ensureIndexIsVisible(suggestionList.getSelectedIndex());
+    }
+
+    /**
+     * Puts the picked location's name into the text field and passes the location on.
+     *
+     * @param location The picked location.
+     */
+    private void select(JSONObject location) {
+        setText(String.valueOf(location.get("name")));
+        onSelect.accept(location);
+    }
+
+    /**
+     * Cancels the running geocoding request, interrupting its worker.
+     */
+    private void cancelLookup() {
+        if (pendingLookup != null) {
+            pendingLookup.cancel(true);
+            pendingLookup = null;
+        }
+    }
+}
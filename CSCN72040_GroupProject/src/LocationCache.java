@@ -0,0 +1,241 @@
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe cache of geocoding results keyed by normalized location name.
+ * Least recently used entries are evicted first and entries expire after a fixed time to live.
+ * When a file is configured the cache is loaded from it at startup and written back after each new entry,
+ * so a cold start doesn't need to call the geocoding API for locations seen before.
+ */
+public class LocationCache {
+
+    /**
+     * A cached geocoding result and the time it was stored.
+     */
+    private static class Entry {
+        private final JSONArray locations;
+        private final long storedAtMillis;
+
+        private Entry(JSONArray locations, long storedAtMillis) {
+            this.locations = locations;
+            this.storedAtMillis = storedAtMillis;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Path file;
+
+    // Access ordered map, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries Maximum number of locations kept before the least recently used one is evicted.
+     * @param ttlMillis  Time in milliseconds an entry stays valid.
+     * @param file       File the cache is persisted to, or null to keep it in memory only.
+     */
+    public LocationCache(int maxEntries, long ttlMillis, Path file) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.file = file;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > LocationCache.this.maxEntries;
+            }
+        };
+
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * Creates a cache configured from system properties:
+     * weather.locationCache.size (default 256), weather.locationCache.ttlHours (default 720)
+     * and weather.locationCache.file (no persistence when unset).
+     *
+     * @return LocationCache configured for this process.
+     */
+    public static LocationCache fromSystemProperties() {
+        int size = Integer.getInteger("weather.locationCache.size", 256);
+        long ttlHours = Long.getLong("weather.locationCache.ttlHours", 720L);
+        String fileName = System.getProperty("weather.locationCache.file");
+
+        return new LocationCache(size, ttlHours * 60L * 60L * 1000L, fileName == null ? null : Paths.get(fileName));
+    }
+
+    /**
+     * Normalizes a location name into a cache key. Case is folded, surrounding whitespace is removed
+     * and inner whitespace runs become a single + to match the geocoding API's request format.
+     *
+     * @param locationName The name of the location.
+     * @return Normalized location name.
+     */
+    public static String normalize(String locationName) {
+        return locationName.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", "+");
+    }
+
+    /**
+     * Looks up the geocoding result for a normalized location name.
+     *
+     * @param key Normalized location name.
+     * @return Cached locations, or null if absent or expired.
+     */
+    public JSONArray get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.storedAtMillis > ttlMillis) {
+                entries.remove(key);
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            return entry.locations;
+        }
+    }
+
+    /**
+     * Stores the geocoding result for a normalized location name.
+     *
+     * @param key       Normalized location name.
+     * @param locations Locations returned by the geocoding API.
+     */
+    public void put(String key, JSONArray locations) {
+        synchronized (entries) {
+            entries.put(key, new Entry(locations, System.currentTimeMillis()));
+        }
+
+        if (file != null) {
+            save();
+        }
+    }
+
+    /**
+     * Returns the cached location lists, most recently used last.
+     *
+     * @return Snapshot of the cached geocoding results.
+     */
+    public List<JSONArray> values() {
+        synchronized (entries) {
+            List<JSONArray> values = new ArrayList<>(entries.size());
+            for (Entry entry : entries.values()) {
+                values.add(entry.locations);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * @return Number of lookups answered from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of lookups that had to go to the geocoding API.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of locations currently cached.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Loads previously persisted entries, skipping expired and unreadable lines.
+     * Each line holds the key, the store time and the JSON result separated by tabs.
+     */
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        JSONParser parser = new JSONParser();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+
+                try {
+                    long storedAtMillis = Long.parseLong(parts[1]);
+                    if (now - storedAtMillis > ttlMillis) {
+                        continue;
+                    }
+
+                    JSONArray locations = (JSONArray) parser.parse(parts[2]);
+                    synchronized (entries) {
+                        entries.put(parts[0], new Entry(locations, storedAtMillis));
+                    }
+                } catch (Exception e) {
+                    // Ignore corrupt lines, the location will simply be fetched again
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes all entries to the cache file, replacing it atomically.
+     */
+    private synchronized void save() {
+        List<String> lines = new ArrayList<>();
+        synchronized (entries) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                lines.add(entry.getKey() + "\t" + entry.getValue().storedAtMillis + "\t"
+                        + entry.getValue().locations.toJSONString());
+            }
+        }
+
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+/**
+ * Streaming handler for Open-Meteo geocoding responses.
+ * Builds the list of candidate locations keeping only the fields the application uses.
+ */
+public class LocationContentHandler implements ContentHandler {
+
+    // Location fields kept for each result
+    private static final Set<String> LOCATION_FIELDS =
+            Set.of("name", "latitude", "longitude", "country", "admin1", "timezone");
+
+    // Keys of the object entries currently being parsed, innermost first
+    private final Deque<String> keys = new ArrayDeque<>();
+
+    private JSONArray results;
+
+    // Result currently being read, or null outside the results array
+    private JSONObject currentLocation;
+
+    /**
+     * Returns the candidate locations.
+     *
+     * @return JSONArray of locations, or null if the response contained no results.
+     */
+    public JSONArray getResults() {
+        return results;
+    }
+
+    @Override
+    public void startJSON() {
+    }
+
+    @Override
+    public void endJSON() {
+    }
+
+    @Override
+    public boolean startObject() {
+        // Each result is an object directly inside the top level "results" array
+        if (keys.size() == 1 && "results".equals(keys.peek())) {
+            currentLocation = new JSONObject();
+            results.add(currentLocation);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endObject() {
+        if (keys.size() == 1) {
+            currentLocation = null;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) {
+        keys.push(key);
+        return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+        keys.pop();
+        return true;
+    }
+
+    @Override
+    public boolean startArray() {
+        if (keys.size() == 1 && "results".equals(keys.peek())) {
+            results = new JSONArray();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endArray() {
+        return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+        // Only direct fields of a result are kept, nested values such as postcodes are skipped
+        if (currentLocation != null && keys.size() == 2 && LOCATION_FIELDS.contains(keys.peek())) {
+            currentLocation.put(keys.peek(), value);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,234 @@
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Prefix index (trie) over the names of previously geocoded locations, for search-as-you-type suggestions
+ * that don't need a network call. Every word of a name is indexed, so "york" also finds "New York".
+ * The index holds a bounded number of locations; when full, the location added or seen least recently is dropped.
+ */
+public class LocationIndex {
+
+    /**
+     * Node of the trie, one per distinct prefix.
+     */
+    private static class Node {
+        // Children in alphabetical order, so suggestions come out sorted
+        final Map<Character, Node> children = new TreeMap<>();
+
+        // Locations whose name (or one of its words) ends at this node, in the order they were added
+        List<JSONObject> locations;
+    }
+
+    private final Node root = new Node();
+    private final int maxLocations;
+
+    // Indexed locations by identity, so results returned repeatedly by the API are indexed once.
+    // In access order, so the eldest entry is the location to drop when the index is full
+    private final Map<String, JSONObject> indexed = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Creates an empty index.
+     *
+     * @param maxLocations Maximum number of locations kept in the index.
+     */
+    public LocationIndex(int maxLocations) {
+        this.maxLocations = maxLocations;
+    }
+
+    /**
+     * Creates an empty index configured from the system property weather.locationIndex.maxLocations (default 5000).
+     *
+     * @return LocationIndex configured for this process.
+     */
+    public static LocationIndex fromSystemProperties() {
+        return new LocationIndex(Integer.getInteger("weather.locationIndex.maxLocations", 5000));
+    }
+
+    /**
+     * Adds all locations of a geocoding result.
+     *
+     * @param locationData Locations returned by getLocationData.
+     */
+    public synchronized void addAll(JSONArray locationData) {
+        for (Object location : locationData) {
+            add((JSONObject) location);
+        }
+    }
+
+    /**
+     * Adds a location under its full name and every word of its name,
+     * dropping the least recently seen location if the index is full.
+     *
+     * @param location A location returned by getLocationData.
+     */
+    public synchronized void add(JSONObject location) {
+        Object name = location.get("name");
+        if (!(name instanceof String)) {
+            return;
+        }
+
+        // Looking up an indexed location marks it as recently seen
+        String identity = identity(location);
+        if (indexed.get(identity) != null) {
+            return;
+        }
+
+        indexed.put(identity, location);
+        for (String key : keys((String) name)) {
+            insert(key, location);
+        }
+
+        if (indexed.size() > maxLocations) {
+            Iterator<JSONObject> eldest = indexed.values().iterator();
+            JSONObject dropped = eldest.next();
+            eldest.remove();
+            for (String key : keys((String) dropped.get("name"))) {
+                remove(key, dropped);
+            }
+        }
+    }
+
+    /**
+     * Finds locations whose name, or a word of it, starts with the given prefix.
+     * Exact matches come first, then longer names, shortest first and alphabetical within the same length.
+     *
+     * @param prefix Text typed by the user.
+     * @param limit  Maximum number of suggestions.
+     * @return Up to limit locations, empty if none match.
+     */
+    public synchronized List<JSONObject> suggest(String prefix, int limit) {
+        String key = LocationCache.normalize(prefix);
+        if (key.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+
+        Set<JSONObject> suggestions = new LinkedHashSet<>();
+        if (node != null) {
+            collect(node, suggestions, limit);
+        }
+        return new ArrayList<>(suggestions);
+    }
+
+    /**
+     * @return Number of indexed locations.
+     */
+    public synchronized int size() {
+        return indexed.size();
+    }
+
+    /**
+     * Lists the keys a location name is indexed under: the full name and the name from every later word on.
+     *
+     * @param name Name of the location.
+     * @return Normalized keys.
+     */
+    private static List<String> keys(String name) {
+        String key = LocationCache.normalize(name);
+        List<String> keys = new ArrayList<>();
+        keys.add(key);
+        for (int i = key.indexOf('+'); i >= 0; i = key.indexOf('+', i + 1)) {
+            keys.add(key.substring(i + 1));
+        }
+        return keys;
+    }
+
+    /**
+     * Adds a location under a key, creating the missing nodes.
+     *
+     * @param key      Normalized name.
+     * @param location The location.
+     */
+    private void insert(String key, JSONObject location) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+        }
+
+        if (node.locations == null) {
+            node.locations = new ArrayList<>(1);
+        }
+        node.locations.add(location);
+    }
+
+    /**
+     * Removes a location from a key, pruning the nodes left without locations or children.
+     *
+     * @param key      Normalized name the location was inserted under.
+     * @param location The location.
+     */
+    private void remove(String key, JSONObject location) {
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].children.get(key.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+
+        Node node = path[key.length()];
+        if (node.locations != null) {
+            // By identity, the same location object was inserted under every key
+            node.locations.removeIf(indexedLocation -> indexedLocation == location);
+            if (node.locations.isEmpty()) {
+                node.locations = null;
+            }
+        }
+
+        // Walk back up, dropping nodes that no longer lead to any location
+        for (int i = key.length(); i > 0 && path[i].locations == null && path[i].children.isEmpty(); i--) {
+            path[i - 1].children.remove(key.charAt(i - 1));
+        }
+    }
+
+    /**
+     * Collects the locations below a node, shortest names first, until the limit is reached.
+     *
+     * @param node        Node of the typed prefix.
+     * @param suggestions Collected locations.
+     * @param limit       Maximum number of locations.
+     */
+    private static void collect(Node node, Set<JSONObject> suggestions, int limit) {
+        List<Node> level = new ArrayList<>();
+        level.add(node);
+
+        // Breadth first, so a name is suggested before the longer names it is a prefix of
+        while (!level.isEmpty() && suggestions.size() < limit) {
+            List<Node> next = new ArrayList<>();
+            for (Node current : level) {
+                if (current.locations != null) {
+                    for (JSONObject location : current.locations) {
+                        if (suggestions.size() >= limit) {
+                            return;
+                        }
+                        suggestions.add(location);
+                    }
+                }
+                next.addAll(current.children.values());
+            }
+            level = next;
+        }
+    }
+
+    /**
+     * @param location A location returned by getLocationData.
+     * @return Key identifying the location by name and coordinates.
+     */
+    private static String identity(JSONObject location) {
+        return location.get("name") + "@" + location.get("latitude") + "," + location.get("longitude");
+    }
+}
@@ -1,15 +1,35 @@
 import javax.swing.*;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * The main class responsible for starting the Weather Application.
  */
 public class Main {
     /**
-     * The main method that starts the Weather Application GUI.
+     * The main method that starts the Weather Application GUI,
+     * or the headless mode when the first argument is --headless,
+     * or the local HTTP service when the first argument is --serve.
      *
-     * @param args Command-line arguments (not used).
+     * @param args Command-line arguments.
+     * @throws IOException If the HTTP service cannot bind its port.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // Run without Swing, e.g. as a batch job on a server
+        if (args.length > 0 && args[0].equals("--headless")) {
+            Headless.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Serve weather data to other tools over HTTP
+        if (args.length > 0 && args[0].equals("--serve")) {
+            WeatherServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Decode the images in the background while the GUI is being built
+        IconRegistry.preload();
+
         // Start the Swing GUI in the event dispatch thread
         SwingUtilities.invokeLater(new Runnable() {
             @Override
@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Paces outbound requests so the Open-Meteo fair-use limits are never hit.
+ * Every host has a token bucket refilled at a fixed rate; a request takes a token before it is sent and waits
+ * in a queue when none is left. Interactive requests (searches) are always served before background requests
+ * (prefetches, favourite refreshes, batch jobs), and a request that cannot get a token before its deadline
+ * is shed right away instead of waiting in vain. A 429 response pauses the host's bucket.
+ *
+ * The priority of a request is taken from the thread sending it, see callWithPriority.
+ */
+public class RequestScheduler {
+
+    /**
+     * Priority of outbound requests, highest first.
+     */
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    /**
+     * Token bucket and wait queues of one host. All fields are guarded by the bucket's monitor.
+     */
+    private static class Bucket {
+        double tokens;
+        long refilledAtNanos = System.nanoTime();
+        long pausedUntilNanos;
+
+        // Requests waiting for a token, one queue per priority, iterated highest priority first
+        final Map<Priority, Deque<Object>> waiting = new EnumMap<>(Priority.class);
+
+        Bucket(double tokens) {
+            this.tokens = tokens;
+            for (Priority priority : Priority.values()) {
+                waiting.put(priority, new ArrayDeque<>());
+            }
+        }
+
+        /**
+         * Counts the requests that will get a token before the given one.
+         *
+         * @param ticket   Ticket of the waiting request.
+         * @param priority Priority of the request.
+         * @return Number of requests ahead, 0 if the request is next.
+         */
+        int position(Object ticket, Priority priority) {
+            int ahead = 0;
+            for (Map.Entry<Priority, Deque<Object>> queue : waiting.entrySet()) {
+                if (queue.getKey() == priority) {
+                    break;
+                }
+                ahead += queue.getValue().size();
+            }
+            for (Object queued : waiting.get(priority)) {
+                if (queued == ticket) {
+                    break;
+                }
+                ahead++;
+            }
+            return ahead;
+        }
+    }
+
+    // Priority of the requests sent by the current thread
+    private static final ThreadLocal<Priority> PRIORITY = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+    private final double requestsPerSecond;
+    private final double burst;
+    private final long interactiveDeadlineNanos;
+    private final long backgroundDeadlineNanos;
+    private final WeatherMetrics metrics;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param requestsPerSecond         Sustained requests per second per host, 0 disables rate limiting.
+     * @param burst                     Requests a host may receive at once after being idle.
+     * @param interactiveDeadlineMillis Longest time an interactive request may wait for a token.
+     * @param backgroundDeadlineMillis  Longest time a background request may wait for a token.
+     * @param metrics                   Metrics recording queue waits and shed requests.
+     */
+    public RequestScheduler(double requestsPerSecond, double burst, long interactiveDeadlineMillis,
+                            long backgroundDeadlineMillis, WeatherMetrics metrics) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = Math.max(1.0, burst);
+        this.interactiveDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(interactiveDeadlineMillis);
+        this.backgroundDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(backgroundDeadlineMillis);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates a scheduler configured from system properties:
+     * weather.rateLimit.requestsPerSecond (default 10, 0 disables), weather.rateLimit.burst (default 10),
+     * weather.rateLimit.interactiveDeadlineMillis (default 5000)
+     * and weather.rateLimit.backgroundDeadlineMillis (default 60000).
+     *
+     * @param metrics Metrics recording queue waits and shed requests.
+     * @return RequestScheduler configured for this process.
+     */
+    public static RequestScheduler fromSystemProperties(WeatherMetrics metrics) {
+        return new RequestScheduler(
+                Double.parseDouble(System.getProperty("weather.rateLimit.requestsPerSecond", "10")),
+                Double.parseDouble(System.getProperty("weather.rateLimit.burst", "10")),
+                Long.getLong("weather.rateLimit.interactiveDeadlineMillis", 5000L),
+                Long.getLong("weather.rateLimit.backgroundDeadlineMillis", 60000L),
+                metrics);
+    }
+
+    /**
+     * @return Priority of the requests sent by the current thread, INTERACTIVE unless set otherwise.
+     */
+    public static Priority getPriority() {
+        return PRIORITY.get();
+    }
+
+    /**
+     * Runs a task whose requests are sent with the given priority, e.g. a background refresh.
+     *
+     * @param priority Priority of the task's requests.
+     * @param task     The task.
+     * @param <T>      Type of the task result.
+     * @return Result of the task.
+     */
+    public static <T> T callWithPriority(Priority priority, Supplier<T> task) {
+        Priority previous = PRIORITY.get();
+        PRIORITY.set(priority);
+        try {
+            return task.get();
+        } finally {
+            PRIORITY.set(previous);
+        }
+    }
+
+    /**
+     * Waits until a request to the host may be sent, taking a token from its bucket.
+     * Requests of the current thread's priority queue behind all waiting requests of a higher priority.
+     *
+     * @param host Host the request is sent to.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     * @throws IOException            If the request is shed because no token is available before its deadline.
+     */
+    public void acquire(String host) throws IOException {
+        if (requestsPerSecond <= 0) {
+            return;
+        }
+
+        Priority priority = PRIORITY.get();
+        long start = System.nanoTime();
+        long deadline = start + (priority == Priority.INTERACTIVE ? interactiveDeadlineNanos : backgroundDeadlineNanos);
+
+        Bucket bucket = buckets.computeIfAbsent(host, h -> new Bucket(burst));
+        Object ticket = new Object();
+
+        synchronized (bucket) {
+            Deque<Object> queue = bucket.waiting.get(priority);
+            queue.addLast(ticket);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(bucket, now);
+
+                    int ahead = bucket.position(ticket, priority);
+                    if (ahead == 0 && now >= bucket.pausedUntilNanos && bucket.tokens >= 1.0) {
+                        bucket.tokens -= 1.0;
+                        metrics.record(WeatherMetrics.Stage.QUEUE, start);
+                        return;
+                    }
+
+                    // Shed now if the tokens for everyone ahead can't arrive before the deadline
+                    double tokensNeeded = ahead + 1 - bucket.tokens;
+                    long readyAt = Math.max(now, bucket.pausedUntilNanos)
+                            + (long) (Math.max(0.0, tokensNeeded) / requestsPerSecond * 1e9);
+                    if (readyAt > deadline) {
+                        metrics.recordShed();
+                        throw new IOException("Request to " + host + " shed, rate limit leaves no slot within "
+                                + TimeUnit.NANOSECONDS.toMillis(deadline - start) + " ms");
+                    }
+
+                    // Woken early when a request ahead takes its token or gives up
+                    TimeUnit.NANOSECONDS.timedWait(bucket, Math.max(readyAt - now, 1_000_000L));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request slot");
+            } finally {
+                queue.remove(ticket);
+                bucket.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops sending requests to a host for a while, e.g. after it answered 429 Too Many Requests.
+     *
+     * @param host        The host.
+     * @param pauseMillis How long no requests are sent.
+     */
+    public void pause(String host, long pauseMillis) {
+        Bucket bucket = buckets.computeIfAbsent(host, h -> new Bucket(burst));
+        synchronized (bucket) {
+            long now = System.nanoTime();
+            bucket.pausedUntilNanos = Math.max(bucket.pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+            bucket.tokens = 0.0;
+            bucket.refilledAtNanos = bucket.pausedUntilNanos;
+            bucket.notifyAll();
+        }
+    }
+
+    /**
+     * Adds the tokens earned since the last refill, up to the burst size.
+     *
+     * @param bucket The bucket, whose monitor the caller holds.
+     * @param now    Current System.nanoTime().
+     */
+    private void refill(Bucket bucket, long now) {
+        if (now <= bucket.refilledAtNanos) {
+            return;
+        }
+
+        double earned = (now - bucket.refilledAtNanos) / 1e9 * requestsPerSecond;
+        bucket.tokens = Math.min(burst, bucket.tokens + earned);
+        bucket.refilledAtNanos = now;
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Weather conditions of the WMO present weather code table (WMO 4677), which Open-Meteo's weathercode uses.
+ * Every code from 0 to 99 maps to a condition through a precomputed table, so decoding a code is
+ * a single array lookup. Each condition carries the label shown to the user, a severity for picking the
+ * worst condition of a period, and the icon displaying it.
+ */
+public enum WeatherCondition {
+    // Declared in non-decreasing severity; conditions sharing a severity tie in worse(), which keeps the earlier one
+    UNKNOWN("Unknown", -1, WeatherIcon.CLOUDY),
+    CLEAR("Clear", 0, WeatherIcon.CLEAR),
+    MAINLY_CLEAR("Mainly clear", 1, WeatherIcon.CLEAR),
+    PARTLY_CLOUDY("Partly cloudy", 2, WeatherIcon.CLOUDY),
+    OVERCAST("Overcast", 3, WeatherIcon.CLOUDY),
+    HAZE("Haze", 4, WeatherIcon.CLOUDY),
+    FOG("Fog", 5, WeatherIcon.CLOUDY),
+    FREEZING_FOG("Freezing fog", 6, WeatherIcon.CLOUDY),
+    DRIZZLE("Drizzle", 7, WeatherIcon.RAIN),
+    RAIN_SHOWERS("Rain showers", 8, WeatherIcon.RAIN),
+    RAIN("Rain", 9, WeatherIcon.RAIN),
+    SNOW_SHOWERS("Snow showers", 10, WeatherIcon.SNOW),
+    SNOW("Snow", 10, WeatherIcon.SNOW),
+    HEAVY_RAIN("Heavy rain", 11, WeatherIcon.RAIN),
+    FREEZING_DRIZZLE("Freezing drizzle", 12, WeatherIcon.RAIN),
+    SLEET("Rain and snow", 12, WeatherIcon.SNOW),
+    BLOWING_SNOW("Blowing snow", 13, WeatherIcon.SNOW),
+    HEAVY_SNOW("Heavy snow", 13, WeatherIcon.SNOW),
+    FREEZING_RAIN("Freezing rain", 14, WeatherIcon.RAIN),
+    HAIL("Hail", 14, WeatherIcon.RAIN),
+    SQUALLS("Squalls", 14, WeatherIcon.CLOUDY),
+    DUST_STORM("Dust storm", 15, WeatherIcon.CLOUDY),
+    THUNDERSTORM("Thunderstorm", 16, WeatherIcon.THUNDERSTORMS_RAIN),
+    THUNDERSTORM_HAIL("Thunderstorm with hail", 17, WeatherIcon.THUNDERSTORMS_RAIN),
+    FUNNEL_CLOUD("Funnel cloud", 18, WeatherIcon.THUNDERSTORMS_RAIN);
+
+    // Condition of every code from 0 to 99
+    private static final WeatherCondition[] BY_CODE = new WeatherCondition[100];
+
+    static {
+        // Cloud development
+        fill(0, 0, CLEAR);
+        fill(1, 1, MAINLY_CLEAR);
+        fill(2, 2, PARTLY_CLOUDY);
+        fill(3, 3, OVERCAST);
+
+        // Haze, dust, mist and phenomena in sight of the station
+        fill(4, 9, HAZE);
+        fill(10, 12, FOG);
+        fill(13, 13, THUNDERSTORM);
+        fill(14, 16, RAIN_SHOWERS);
+        fill(17, 17, THUNDERSTORM);
+        fill(18, 18, SQUALLS);
+        fill(19, 19, FUNNEL_CLOUD);
+
+        // Weather during the preceding hour but not at the time of observation
+        fill(20, 20, DRIZZLE);
+        fill(21, 21, RAIN);
+        fill(22, 22, SNOW);
+        fill(23, 23, SLEET);
+        fill(24, 24, FREEZING_RAIN);
+        fill(25, 25, RAIN_SHOWERS);
+        fill(26, 26, SNOW_SHOWERS);
+        fill(27, 27, HAIL);
+        fill(28, 28, FOG);
+        fill(29, 29, THUNDERSTORM);
+
+        // Dust storms, blowing snow and fog
+        fill(30, 35, DUST_STORM);
+        fill(36, 39, BLOWING_SNOW);
+        fill(40, 47, FOG);
+        fill(48, 49, FREEZING_FOG);
+
+        // Drizzle
+        fill(50, 55, DRIZZLE);
+        fill(56, 57, FREEZING_DRIZZLE);
+        fill(58, 59, RAIN);
+
+        // Rain, by intensity
+        fill(60, 63, RAIN);
+        fill(64, 65, HEAVY_RAIN);
+        fill(66, 67, FREEZING_RAIN);
+        fill(68, 69, SLEET);
+
+        // Snow and ice, by intensity
+        fill(70, 73, SNOW);
+        fill(74, 75, HEAVY_SNOW);
+        fill(76, 78, SNOW);
+        fill(79, 79, SLEET);
+
+        // Showers
+        fill(80, 81, RAIN_SHOWERS);
+        fill(82, 82, HEAVY_RAIN);
+        fill(83, 84, SLEET);
+        fill(85, 85, SNOW_SHOWERS);
+        fill(86, 86, HEAVY_SNOW);
+        fill(87, 90, HAIL);
+
+        // Thunderstorms
+        fill(91, 95, THUNDERSTORM);
+        fill(96, 96, THUNDERSTORM_HAIL);
+        fill(97, 98, THUNDERSTORM);
+        fill(99, 99, THUNDERSTORM_HAIL);
+    }
+
+    private final String label;
+    private final int severity;
+    private final WeatherIcon icon;
+
+    WeatherCondition(String label, int severity, WeatherIcon icon) {
+        this.label = label;
+        this.severity = severity;
+        this.icon = icon;
+    }
+
+    /**
+     * Sets the condition of a range of codes.
+     *
+     * @param first     First code of the range.
+     * @param last      Last code of the range, inclusive.
+     * @param condition Condition of the codes.
+     */
+    private static void fill(int first, int last, WeatherCondition condition) {
+        for (int code = first; code <= last; code++) {
+            BY_CODE[code] = condition;
+        }
+    }
+
+    /**
+     * Decodes a WMO weather code.
+     *
+     * @param weatherCode The weather code.
+     * @return The condition, or UNKNOWN if the code is outside 0 to 99.
+     */
+    public static WeatherCondition fromCode(long weatherCode) {
+        return weatherCode >= 0 && weatherCode < BY_CODE.length ? BY_CODE[(int) weatherCode] : UNKNOWN;
+    }
+
+    /**
+     * @return Readable name of the condition.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return Severity of the condition, higher is worse; UNKNOWN is below every known condition.
+     */
+    public int getSeverity() {
+        return severity;
+    }
+
+    /**
+     * @return Icon showing the condition.
+     */
+    public WeatherIcon getIcon() {
+        return icon;
+    }
+
+    /**
+     * Picks the more severe of two conditions. On a tie this condition is kept, so folding a series of conditions
+     * yields the earliest of the equally severe worst ones.
+     *
+     * @param other Another condition.
+     * @return This condition, or the other if it is strictly more severe.
+     */
+    public WeatherCondition worse(WeatherCondition other) {
+        return other.severity > severity ? other : this;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Images bundled in the assets folder, served by the IconRegistry.
+ */
+public enum WeatherIcon {
+    CLEAR("clear.png"),
+    CLOUDY("cloudy.png"),
+    RAIN("rain.png"),
+    SNOW("snow.png"),
+    THUNDERSTORMS_RAIN("thunderstorms-rain.png"),
+    HUMIDITY("humidity.png"),
+    UV_INDEX("uv-index.png"),
+    SUNRISE("sunrise.png"),
+    SUNSET("sunset.png"),
+    WINDSPEED("windspeed.png"),
+    SEARCH("search.png");
+
+    private final String fileName;
+
+    WeatherIcon(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * @return Name of the image file in the assets folder.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,335 @@
+import org.json.simple.JSONObject;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and counters for the stages of a weather lookup, so a slow search can be traced
+ * to geocoding, the forecast request, reading the response body or parsing it.
+ * Recording only costs a clock read and a few atomic increments. The metrics are exposed through JMX,
+ * as JSON for the local HTTP service, and optionally written to standard error at a fixed interval.
+ */
+public class WeatherMetrics implements WeatherMetricsMXBean {
+
+    /**
+     * Timed stages of a weather lookup.
+     */
+    public enum Stage {
+        // Whole getWeatherData call, from location name to forecast
+        SEARCH("search"),
+        // Wait for a request slot of the rate limiter, also part of the request stages
+        QUEUE("queue"),
+        // Geocoding request until the response body arrived, including retries
+        GEOCODING("geocoding"),
+        // Forecast request until the response body arrived, including retries
+        FORECAST("forecast"),
+        // Time spent decompressing and decoding response body bytes
+        BODY_READ("body_read"),
+        // Time spent parsing response bodies, excluding the time waiting for bytes
+        PARSE("parse");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return Name of the stage in metric keys.
+         */
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Response body stream that counts the bytes read and the time spent waiting for them.
+     */
+    public static class MeteredInputStream extends FilterInputStream {
+
+        private long bytes;
+        private long readNanos;
+
+        private MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int value = super.read();
+            readNanos += System.nanoTime() - start;
+            if (value >= 0) {
+                bytes++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, length);
+            readNanos += System.nanoTime() - start;
+            if (read > 0) {
+                bytes += read;
+            }
+            return read;
+        }
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> failures = new EnumMap<>(Stage.class);
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder bytesDownloaded = new LongAdder();
+
+    private final LocationCache locationCache;
+    private final ForecastCache forecastCache;
+
+    /**
+     * Creates metrics for the given caches.
+     *
+     * @param locationCache Cache of geocoding results whose hit rate is reported.
+     * @param forecastCache Cache of forecasts whose hit rate is reported.
+     */
+    public WeatherMetrics(LocationCache locationCache, ForecastCache forecastCache) {
+        this.locationCache = locationCache;
+        this.forecastCache = forecastCache;
+
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new LatencyHistogram());
+            failures.put(stage, new LongAdder());
+        }
+    }
+
+    /**
+     * Creates metrics configured from system properties: weather.metrics.jmx (default true) registers them
+     * as weather:type=Metrics, weather.metrics.logSeconds (default 0 = never) writes a summary at that interval.
+     *
+     * @param locationCache Cache of geocoding results whose hit rate is reported.
+     * @param forecastCache Cache of forecasts whose hit rate is reported.
+     * @return WeatherMetrics configured for this process.
+     */
+    public static WeatherMetrics fromSystemProperties(LocationCache locationCache, ForecastCache forecastCache) {
+        WeatherMetrics metrics = new WeatherMetrics(locationCache, forecastCache);
+
+        if (Boolean.parseBoolean(System.getProperty("weather.metrics.jmx", "true"))) {
+            metrics.register();
+        }
+
+        long logSeconds = Long.getLong("weather.metrics.logSeconds", 0L);
+        if (logSeconds > 0) {
+            metrics.startLogging(logSeconds);
+        }
+        return metrics;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as weather:type=Metrics.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("weather:type=Metrics"));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the summary to standard error at a fixed interval, on a daemon thread.
+     *
+     * @param periodSeconds Time between two summaries.
+     */
+    public void startLogging(long periodSeconds) {
+        ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "weather-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.scheduleAtFixedRate(() -> System.err.println(getSummary()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records the latency of a stage.
+     *
+     * @param stage      The stage.
+     * @param startNanos System.nanoTime() when the stage started.
+     */
+    public void record(Stage stage, long startNanos) {
+        latencies.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Counts a failed stage, e.g. a request that still failed after all retries.
+     *
+     * @param stage The stage.
+     */
+    public void recordFailure(Stage stage) {
+        failures.get(stage).increment();
+    }
+
+    /**
+     * Counts a request attempt that timed out.
+     */
+    public void recordTimeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * Counts a retried request.
+     */
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    /**
+     * Counts a request dropped by the rate limiter because it could not be sent before its deadline.
+     */
+    public void recordShed() {
+        shed.increment();
+    }
+
+    /**
+     * Wraps a response body so reading it is measured.
+     *
+     * @param body The response body.
+     * @return Stream to read the body from, to be passed to recordBody once parsed.
+     */
+    public MeteredInputStream meter(InputStream body) {
+        return new MeteredInputStream(body);
+    }
+
+    /**
+     * Records reading and parsing a response body, splitting the total time into the time spent
+     * waiting for bytes and the time spent parsing them.
+     *
+     * @param body       The metered body, fully read.
+     * @param startNanos System.nanoTime() when parsing started.
+     */
+    public void recordBody(MeteredInputStream body, long startNanos) {
+        long totalNanos = System.nanoTime() - startNanos;
+
+        bytesDownloaded.add(body.bytes);
+        latencies.get(Stage.BODY_READ).record(body.readNanos);
+        latencies.get(Stage.PARSE).record(totalNanos - body.readNanos);
+    }
+
+    /**
+     * @param stage The stage.
+     * @return Latency histogram of the stage.
+     */
+    public LatencyHistogram getLatency(Stage stage) {
+        return latencies.get(stage);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        for (Stage stage : new Stage[]{Stage.SEARCH, Stage.GEOCODING, Stage.FORECAST}) {
+            counters.put(stage.getKey() + "_requests", latencies.get(stage).getCount());
+            counters.put(stage.getKey() + "_failures", failures.get(stage).sum());
+        }
+        counters.put("timeouts", timeouts.sum());
+        counters.put("retries", retries.sum());
+        counters.put("shed_requests", shed.sum());
+        counters.put("bytes_downloaded", bytesDownloaded.sum());
+        return counters;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMillis() {
+        Map<String, Double> latencyMillis = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = latencies.get(stage);
+            latencyMillis.put(stage.getKey() + ".mean", histogram.getMeanMillis());
+            for (double percentile : PERCENTILES) {
+                latencyMillis.put(stage.getKey() + ".p" + (int) percentile, histogram.getPercentileMillis(percentile));
+            }
+            latencyMillis.put(stage.getKey() + ".max", histogram.getMaxMillis());
+        }
+        return latencyMillis;
+    }
+
+    @Override
+    public double getLocationCacheHitRate() {
+        return hitRate(locationCache.getHits(), locationCache.getMisses());
+    }
+
+    @Override
+    public double getForecastCacheHitRate() {
+        return hitRate(forecastCache.getHits(), forecastCache.getMisses());
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return bytesDownloaded.sum();
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Weather metrics:");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = latencies.get(stage);
+            summary.append(String.format(" %s n=%d p50=%.1fms p99=%.1fms max=%.1fms;", stage.getKey(),
+                    histogram.getCount(), histogram.getPercentileMillis(50), histogram.getPercentileMillis(99),
+                    histogram.getMaxMillis()));
+        }
+        summary.append(String.format(" failures=%d timeouts=%d retries=%d shed=%d bytes=%d location_cache_hit_rate=%.2f forecast_cache_hit_rate=%.2f",
+                failures.values().stream().mapToLong(LongAdder::sum).sum(), timeouts.sum(), retries.sum(),
+                shed.sum(), bytesDownloaded.sum(), getLocationCacheHitRate(), getForecastCacheHitRate()));
+        return summary.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Stage stage : Stage.values()) {
+            latencies.get(stage).reset();
+            failures.get(stage).reset();
+        }
+        timeouts.reset();
+        retries.reset();
+        shed.reset();
+        bytesDownloaded.reset();
+    }
+
+    /**
+     * Builds a JSON view of all metrics, for the local HTTP service.
+     *
+     * @return JSONObject with the counters, the latencies in milliseconds and the cache hit rates.
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.putAll(getCounters());
+
+        JSONObject latencyMillis = new JSONObject();
+        latencyMillis.putAll(getLatencyMillis());
+        json.put("latency_ms", latencyMillis);
+
+        json.put("location_cache_hit_rate", getLocationCacheHitRate());
+        json.put("forecast_cache_hit_rate", getForecastCacheHitRate());
+        return json;
+    }
+
+    /**
+     * @param hits   Number of cache hits.
+     * @param misses Number of cache misses.
+     * @return Share of hits, or 0 if the cache was never used.
+     */
+    private static double hitRate(long hits, long misses) {
+        return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Map;
+
+/**
+ * Management interface of WeatherMetrics, registered with the platform MBean server as weather:type=Metrics
+ * so the metrics can be watched with JConsole or any other JMX client.
+ */
+public interface WeatherMetricsMXBean {
+
+    /**
+     * @return Request, failure, timeout, retry, shed request and byte counters, by name.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return Mean, p50, p90, p99 and maximum latency of every stage in milliseconds, keyed like forecast.p99.
+     */
+    Map<String, Double> getLatencyMillis();
+
+    /**
+     * @return Share of geocoding lookups answered from the location cache, between 0 and 1.
+     */
+    double getLocationCacheHitRate();
+
+    /**
+     * @return Share of forecast lookups answered from the forecast cache, between 0 and 1.
+     */
+    double getForecastCacheHitRate();
+
+    /**
+     * @return Number of response body bytes downloaded, after decompression.
+     */
+    long getBytesDownloaded();
+
+    /**
+     * @return One-line summary of all metrics, as written to the periodic log.
+     */
+    String getSummary();
+
+    /**
+     * Clears the request counters and latencies. The cache hit rates cover the whole run.
+     */
+    void reset();
+}
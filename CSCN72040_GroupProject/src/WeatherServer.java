@@ -0,0 +1,270 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local HTTP JSON service exposing DataManagement to other tools, so they share one process
+ * (and its caches) instead of each calling Open-Meteo.
+ * Concurrent requests for the same location are coalesced into a single upstream fetch.
+ * The service has no authentication, so it only listens on the loopback interface unless told otherwise.
+ *
+ * Endpoints: GET /weather?location=NAME and GET /metrics.
+ */
+public class WeatherServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Fetches currently running, by normalized location name
+    private final Map<String, CompletableFuture<WeatherSnapshot>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+
+    /**
+     * Creates a server listening on the given port of the loopback interface. Call start() to accept requests.
+     *
+     * @param port TCP port to listen on.
+     * @throws IOException If the port cannot be bound.
+     */
+    public WeatherServer(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Creates a server listening on the given address and port. Call start() to accept requests.
+     *
+     * @param bindAddress Local address to listen on, or the wildcard address for every interface.
+     * @param port        TCP port to listen on.
+     * @throws IOException If the port cannot be bound.
+     */
+    public WeatherServer(InetAddress bindAddress, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+
+        // Handlers block on upstream fetches, so each request gets its own (pooled) thread
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "weather-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+
+        server.createContext("/weather", this::handleWeather);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Starts the server from the command line.
+     * It listens on the loopback interface; the system property weather.server.bindAddress
+     * selects another local address, e.g. 0.0.0.0 for every interface.
+     *
+     * @param args Optional port number (default 8080).
+     * @throws IOException If the address cannot be resolved or the port cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        String bindAddress = System.getProperty("weather.server.bindAddress", "");
+        InetAddress address = bindAddress.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress);
+
+        WeatherServer server = new WeatherServer(address, port);
+        server.start();
+        System.out.println("Weather service listening on " + address.getHostAddress() + ":" + port);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and shuts the worker threads down.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Handles GET /weather?location=NAME with the current weather of the location.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response cannot be written.
+     */
+    private void handleWeather(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            String location = queryParameter(exchange, "location");
+            if (location == null || location.isBlank()) {
+                sendError(exchange, 400, "Missing location parameter");
+                return;
+            }
+
+            WeatherSnapshot forecast = fetchCoalesced(location);
+            if (forecast == null) {
+                notFound.increment();
+                sendError(exchange, 404, "Could not retrieve weather data for " + location);
+                return;
+            }
+
+            // Last known forecasts from the offline store are marked stale in the response
+            if (forecast.isStale()) {
+                stale.increment();
+            }
+
+            JSONObject weatherData = DataManagement.getCurrentWeather(forecast, ForecastRequest.CURRENT);
+            weatherData.put("location", location);
+            sendJson(exchange, 200, weatherData);
+        } catch (RuntimeException e) {
+            errors.increment();
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            latencyNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Handles GET /metrics with the request counters of this server and the stage metrics of DataManagement.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response cannot be written.
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        long requestCount = requests.sum();
+
+        JSONObject metrics = new JSONObject();
+        metrics.put("requests", requestCount);
+        metrics.put("coalesced_requests", coalesced.sum());
+        metrics.put("upstream_fetches", fetches.sum());
+        metrics.put("not_found", notFound.sum());
+        metrics.put("stale_responses", stale.sum());
+        metrics.put("errors", errors.sum());
+        metrics.put("in_flight", inFlight.size());
+        metrics.put("mean_latency_ms", requestCount == 0 ? 0.0 : latencyNanos.sum() / 1e6 / requestCount);
+        metrics.put("location_cache_hits", DataManagement.getLocationCache().getHits());
+        metrics.put("location_cache_misses", DataManagement.getLocationCache().getMisses());
+        metrics.put("forecast_cache_hits", DataManagement.getForecastCache().getHits());
+        metrics.put("forecast_cache_misses", DataManagement.getForecastCache().getMisses());
+        metrics.put("engine", DataManagement.getMetrics().toJson());
+
+        sendJson(exchange, 200, metrics);
+    }
+
+    /**
+     * Fetches the weather of a location, joining a fetch for the same location that is already running.
+     *
+     * @param location The name of the location.
+     * @return The forecast, or null if it could not be retrieved.
+     */
+    private WeatherSnapshot fetchCoalesced(String location) {
+        String key = LocationCache.normalize(location);
+
+        CompletableFuture<WeatherSnapshot> flight = new CompletableFuture<>();
+        CompletableFuture<WeatherSnapshot> runningFlight = inFlight.putIfAbsent(key, flight);
+        if (runningFlight != null) {
+            coalesced.increment();
+            try {
+                return runningFlight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        WeatherSnapshot forecast = null;
+        try {
+            fetches.increment();
+            // Only the current hour is returned, so only the current hour and today are downloaded
+            forecast = DataManagement.getWeatherData(location, ForecastRequest.CURRENT);
+            return forecast;
+        } finally {
+            inFlight.remove(key, flight);
+            flight.complete(forecast);
+        }
+    }
+
+    /**
+     * Reads a query parameter of the request URL.
+     *
+     * @param exchange The HTTP exchange.
+     * @param name     Name of the parameter.
+     * @return Decoded value of the parameter, or null if absent.
+     */
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0 && pair.substring(0, separator).equals(name)) {
+                return URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends an error response with a JSON body.
+     *
+     * @param exchange The HTTP exchange.
+     * @param status   HTTP status code.
+     * @param message  Error message.
+     * @throws IOException If the response cannot be written.
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        JSONObject error = new JSONObject();
+        error.put("error", message);
+        sendJson(exchange, status, error);
+    }
+
+    /**
+     * Sends a JSON response and closes the exchange.
+     *
+     * @param exchange The HTTP exchange.
+     * @param status   HTTP status code.
+     * @param body     Response body.
+     * @throws IOException If the response cannot be written.
+     */
+    private static void sendJson(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toJSONString().getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Immutable forecast for one location, holding the hourly and daily series in primitive arrays.
+ * Times are stored as local wall clock hours (hourly) or minutes (sunrise/sunset) since the epoch,
+ * so a week of data takes a few kilobytes and reading a value never unboxes.
+ * Values of fields the forecast request did not ask for are NaN, or one of the MISSING markers for integer series.
+ * Temperatures and wind speeds are in the units of the request, Celsius and km/h by default.
+ */
+public final class WeatherSnapshot {
+
+    // Humidity of an hour without a value
+    public static final short MISSING_HUMIDITY = -1;
+
+    // Weather code of an hour without a value, decoded as WeatherCondition.UNKNOWN
+    public static final byte MISSING_WEATHER_CODE = -1;
+
+    // Sunrise or sunset of a day without a value
+    public static final int MISSING_TIME = Integer.MIN_VALUE;
+
+    private final double latitude;
+    private final double longitude;
+
+    // Offset of the forecast's local time from UTC, as reported by the API
+    private final int utcOffsetSeconds;
+
+    // When the forecast was downloaded, and whether it is served from the offline store instead of the API
+    private final long fetchedAtMillis;
+    private final boolean stale;
+
+    // Hourly series, all of the same length
+    private final int[] epochHours;
+    private final double[] temperature;
+    private final short[] humidity;
+    private final byte[] weatherCode;
+    private final double[] windspeed;
+
+    // Daily series, all of the same length
+    private final double[] uvIndexMax;
+    private final int[] sunrise;
+    private final int[] sunset;
+
+    /**
+     * Creates a snapshot from already filled arrays. The arrays are not copied and must not be modified afterwards.
+     *
+     * @param latitude         Latitude of the forecast location.
+     * @param longitude        Longitude of the forecast location.
+     * @param utcOffsetSeconds Offset of the local times in the series from UTC.
+     * @param fetchedAtMillis  Time the forecast was downloaded, in milliseconds since the epoch.
+     * @param epochHours       Local wall clock time of each hour, in hours since the epoch.
+     * @param temperature      Temperature of each hour in the requested unit.
+     * @param humidity         Relative humidity of each hour in percent.
+     * @param weatherCode      WMO weather code of each hour.
+     * @param windspeed        Wind speed of each hour in the requested unit.
+     * @param uvIndexMax       Maximum UV index of each day.
+     * @param sunrise          Local sunrise time of each day, in minutes since the epoch.
+     * @param sunset           Local sunset time of each day, in minutes since the epoch.
+     */
+    WeatherSnapshot(double latitude, double longitude, int utcOffsetSeconds, long fetchedAtMillis,
+                    int[] epochHours, double[] temperature, short[] humidity, byte[] weatherCode, double[] windspeed,
+                    double[] uvIndexMax, int[] sunrise, int[] sunset) {
+        this(latitude, longitude, utcOffsetSeconds, fetchedAtMillis, false,
+                epochHours, temperature, humidity, weatherCode, windspeed, uvIndexMax, sunrise, sunset);
+    }
+
+    private WeatherSnapshot(double latitude, double longitude, int utcOffsetSeconds, long fetchedAtMillis, boolean stale,
+                            int[] epochHours, double[] temperature, short[] humidity, byte[] weatherCode, double[] windspeed,
+                            double[] uvIndexMax, int[] sunrise, int[] sunset) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.utcOffsetSeconds = utcOffsetSeconds;
+        this.fetchedAtMillis = fetchedAtMillis;
+        this.stale = stale;
+        this.epochHours = epochHours;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.weatherCode = weatherCode;
+        this.windspeed = windspeed;
+        this.uvIndexMax = uvIndexMax;
+        this.sunrise = sunrise;
+        this.sunset = sunset;
+    }
+
+    /**
+     * Returns a copy of this snapshot marked as stale, for forecasts served from the offline store.
+     *
+     * @return Stale snapshot sharing this snapshot's series.
+     */
+    WeatherSnapshot asStale() {
+        return new WeatherSnapshot(latitude, longitude, utcOffsetSeconds, fetchedAtMillis, true,
+                epochHours, temperature, humidity, weatherCode, windspeed, uvIndexMax, sunrise, sunset);
+    }
+
+    /**
+     * @return Latitude of the forecast location.
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * @return Longitude of the forecast location.
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return Time the forecast was downloaded, in milliseconds since the epoch.
+     */
+    public long getFetchedAtMillis() {
+        return fetchedAtMillis;
+    }
+
+    /**
+     * @return True if the forecast could not be refreshed and comes from the offline store.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @return Number of hours in the forecast.
+     */
+    public int getHourCount() {
+        return epochHours.length;
+    }
+
+    /**
+     * @return Number of days in the forecast.
+     */
+    public int getDayCount() {
+        return uvIndexMax.length;
+    }
+
+    /**
+     * @return Offset of the local times in the series from UTC, in seconds.
+     */
+    public int getUtcOffsetSeconds() {
+        return utcOffsetSeconds;
+    }
+
+    /**
+     * Finds the index of the current hour in the hourly series.
+     * The current hour is computed in the forecast's own time zone, not the system's.
+     *
+     * @return Index of the current hour, clamped to the first or last hour if now is outside the forecast.
+     */
+    public int getCurrentHourIndex() {
+        return clampHourIndex(currentEpochHour());
+    }
+
+    /**
+     * Finds the index of the hour a number of hours from now, for timeline views.
+     *
+     * @param hoursFromNow Hours after the current hour, 0 being the current hour.
+     * @return Index in the hourly series, or -1 if that hour is not part of the forecast.
+     */
+    public int getHourIndexFromNow(int hoursFromNow) {
+        return indexOfEpochHour(currentEpochHour() + hoursFromNow);
+    }
+
+    /**
+     * Finds the index of a local hour in the hourly series.
+     * The series is hourly, so the index is computed directly from the first hour;
+     * a binary search is used when the series has gaps (e.g. around a daylight saving time change).
+     *
+     * @param epochHour Local wall clock time, in hours since the epoch.
+     * @return Index in the hourly series, or -1 if the hour is not part of the forecast.
+     */
+    public int indexOfEpochHour(long epochHour) {
+        if (epochHours.length == 0) {
+            return -1;
+        }
+
+        long offset = epochHour - epochHours[0];
+        if (offset >= 0 && offset < epochHours.length && epochHours[(int) offset] == epochHour) {
+            return (int) offset;
+        }
+
+        int index = Arrays.binarySearch(epochHours, (int) epochHour);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Computes the current local time of the forecast location.
+     *
+     * @return Current local wall clock time, in hours since the epoch.
+     */
+    private long currentEpochHour() {
+        long localEpochSecond = System.currentTimeMillis() / 1000L + utcOffsetSeconds;
+        return Math.floorDiv(localEpochSecond, 3600L);
+    }
+
+    /**
+     * Finds the index of a local hour, falling back to the nearest end of the series.
+     *
+     * @param epochHour Local wall clock time, in hours since the epoch.
+     * @return Index in the hourly series, or 0 for an empty series.
+     */
+    private int clampHourIndex(long epochHour) {
+        int index = indexOfEpochHour(epochHour);
+        if (index >= 0 || epochHours.length == 0) {
+            return Math.max(index, 0);
+        }
+
+        // Inside a gap, use the last hour before it; outside the series, use the nearest end
+        int insertion = -Arrays.binarySearch(epochHours, (int) epochHour) - 1;
+        return Math.max(0, Math.min(insertion - 1, epochHours.length - 1));
+    }
+
+    /**
+     * @param hour Index in the hourly series.
+     * @return Local wall clock time of the hour, in hours since the epoch.
+     */
+    public int getEpochHour(int hour) {
+        return epochHours[hour];
+    }
+
+    /**
+     * @param hour Index in the hourly series.
+     * @return Temperature in the requested unit, or NaN if missing.
+     */
+    public double getTemperature(int hour) {
+        return temperature[hour];
+    }
+
+    /**
+     * @param hour Index in the hourly series.
+     * @return Relative humidity in percent, or MISSING_HUMIDITY if missing.
+     */
+    public int getHumidity(int hour) {
+        return humidity[hour];
+    }
+
+    /**
+     * @param hour Index in the hourly series.
+     * @return WMO weather code, or MISSING_WEATHER_CODE if missing.
+     */
+    public int getWeatherCode(int hour) {
+        return weatherCode[hour];
+    }
+
+    /**
+     * @param hour Index in the hourly series.
+     * @return Weather condition decoded from the hour's WMO weather code.
+     */
+    public WeatherCondition getCondition(int hour) {
+        return WeatherCondition.fromCode(weatherCode[hour]);
+    }
+
+    /**
+     * @param hour Index in the hourly series.
+     * @return Wind speed in the requested unit, or NaN if missing.
+     */
+    public double getWindspeed(int hour) {
+        return windspeed[hour];
+    }
+
+    /**
+     * @param day Index in the daily series.
+     * @return Maximum UV index of the day, or NaN if missing.
+     */
+    public double getUvIndexMax(int day) {
+        return uvIndexMax[day];
+    }
+
+    /**
+     * @param day Index in the daily series.
+     * @return Local sunrise time, in minutes since the epoch, or MISSING_TIME if missing.
+     */
+    public int getSunriseEpochMinute(int day) {
+        return sunrise[day];
+    }
+
+    /**
+     * @param day Index in the daily series.
+     * @return Local sunset time, in minutes since the epoch, or MISSING_TIME if missing.
+     */
+    public int getSunsetEpochMinute(int day) {
+        return sunset[day];
+    }
+
+    /**
+     * @param day Index in the daily series.
+     * @return Local sunrise time formatted like the API, e.g. 2023-09-02T06:32, or null if missing.
+     */
+    public String getSunrise(int day) {
+        return formatEpochMinute(sunrise[day]);
+    }
+
+    /**
+     * @param day Index in the daily series.
+     * @return Local sunset time formatted like the API, e.g. 2023-09-02T19:45, or null if missing.
+     */
+    public String getSunset(int day) {
+        return formatEpochMinute(sunset[day]);
+    }
+
+    /**
+     * Returns the temperatures of a range of hours.
+     *
+     * @param from First hour index, inclusive.
+     * @param to   Last hour index, exclusive.
+     * @return Copy of the temperatures in the range.
+     */
+    public double[] getTemperatures(int from, int to) {
+        return Arrays.copyOfRange(temperature, from, to);
+    }
+
+    /**
+     * Returns the wind speeds of a range of hours.
+     *
+     * @param from First hour index, inclusive.
+     * @param to   Last hour index, exclusive.
+     * @return Copy of the wind speeds in the range.
+     */
+    public double[] getWindspeeds(int from, int to) {
+        return Arrays.copyOfRange(windspeed, from, to);
+    }
+
+    /**
+     * Returns the weather codes of a range of hours.
+     *
+     * @param from First hour index, inclusive.
+     * @param to   Last hour index, exclusive.
+     * @return Copy of the weather codes in the range.
+     */
+    public byte[] getWeatherCodes(int from, int to) {
+        return Arrays.copyOfRange(weatherCode, from, to);
+    }
+
+    /**
+     * Formats minutes since the epoch as a local date time string.
+     *
+     * @param epochMinute Minutes since the epoch.
+     * @return String representing the time, e.g. 2023-09-02T06:32, or null for MISSING_TIME.
+     */
+    private static String formatEpochMinute(int epochMinute) {
+        if (epochMinute == MISSING_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(epochMinute * 60L, 0, ZoneOffset.UTC).toString();
+    }
+}